@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("application")
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("org.graalvm.buildtools.native") version "0.10.6"
 }
 
 group = "org.example"
@@ -33,5 +34,194 @@ tasks.jar {
 }
 
 tasks.test {
-    useJUnitPlatform()
-}
\ No newline at end of file
+    useJUnitPlatform {
+        excludeTags("benchmark", "scale")
+    }
+}
+
+val benchmark by tasks.registering(Test::class) {
+    group = "verification"
+    description = "Runs the @Tag(\"benchmark\") tests. -Dbenchmark.companies=<n> sets the data size."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    maxHeapSize = "2g"
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+    System.getProperties().stringPropertyNames().filter { it.startsWith("benchmark.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
+
+val scaleTest by tasks.registering(Test::class) {
+    group = "verification"
+    description = "Runs the end-to-end pipeline against a synthetic eToro at -Dscale.sizes=<n,...> companies " +
+            "(10k, 100k and 1M by default) and writes per-stage metrics to build/reports/scale. " +
+            "-PscaleHeap=<size> sets the heap, 8g by default."
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("scale")
+    }
+    maxHeapSize = (findProperty("scaleHeap") as String?) ?: "8g"
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+    val reports = layout.buildDirectory.dir("reports/scale").get().asFile
+    systemProperty("pipeline.metrics", File(reports, "pipeline-metrics.json").absolutePath)
+    systemProperty("scale.report", File(reports, "scale-report.json").absolutePath)
+    systemProperty("scale.workDir", layout.buildDirectory.dir("scale").get().asFile.absolutePath)
+    systemProperty("delta.log", "off")
+    System.getProperties().stringPropertyNames().filter { it.startsWith("scale.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
+
+// Fast-startup outputs for the cron-driven headless `--report` runs. The training and benchmark runs
+// read src/training/companies.json through the file source, so they need no network.
+val shadowJar = tasks.named<com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar>("shadowJar")
+val javaExecutable = File(System.getProperty("java.home"), "bin/java").absolutePath
+val trainingFixture = layout.projectDirectory.file("src/training/companies.json")
+val cdsArchive = layout.buildDirectory.file("cds/EtoroScraper.jsa")
+val nativeImageMetadataDir = layout.buildDirectory.dir("native-image-agent")
+// The tracing agent ships with GraalVM, which nativeCompile also takes from GRAALVM_HOME or JAVA_HOME
+val graalvmJava = (System.getenv("GRAALVM_HOME") ?: System.getenv("JAVA_HOME"))
+    ?.let { File(it, "bin/java").absolutePath } ?: javaExecutable
+
+graalvmNative {
+    // Uses GRAALVM_HOME or JAVA_HOME instead of a toolchain
+    toolchainDetection.set(false)
+    binaries {
+        named("main") {
+            imageName.set("etoro")
+            mainClass.set(application.mainClass)
+            buildArgs.add("--no-fallback")
+            // Reflection and resource metadata recorded by nativeImageMetadata
+            buildArgs.add(nativeImageMetadataDir.map { "-H:ConfigurationFileDirectories=" + it.asFile.absolutePath })
+        }
+    }
+}
+
+/**
+ * Command line for a run over the training fixture, a headless report unless other [arguments] are given.
+ * [launcher] is either `java [options] -jar <jar>` or the native binary; system properties go after it.
+ */
+fun reportCommand(launcher: List<String>, arguments: List<String> = listOf("--report")): List<String> {
+    val properties = listOf("-Ddividend.sources=file:" + trainingFixture.asFile.absolutePath, "-Ddelta.log=off")
+    val jar = launcher.indexOf("-jar")
+    return if (jar < 0) launcher + properties + arguments
+    else launcher.subList(0, jar) + properties + launcher.subList(jar, launcher.size) + arguments
+}
+
+/**
+ * Runs [command] in [workDir] with a fresh companies.json, so every run extracts the fixture, crawls,
+ * saves and analyses the same data. Returns the wall time in milliseconds.
+ */
+fun timeReport(command: List<String>, workDir: File): Double {
+    workDir.mkdirs()
+    File(workDir, "companies.json").delete()
+    val start = System.nanoTime()
+    val process = ProcessBuilder(command).directory(workDir)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(ProcessBuilder.Redirect.DISCARD)
+        .start()
+    val exitCode = process.waitFor()
+    val millis = (System.nanoTime() - start) / 1e6
+    if (exitCode != 0)
+        throw GradleException("${command.joinToString(" ")} exited with $exitCode")
+    return millis
+}
+
+val appCdsArchive by tasks.registering {
+    group = "distribution"
+    description = "Creates an AppCDS archive of the classes loaded by a headless report training run."
+    dependsOn(shadowJar)
+    inputs.file(shadowJar.flatMap { it.archiveFile })
+    inputs.file(trainingFixture)
+    outputs.file(cdsArchive)
+
+    doLast {
+        val archive = cdsArchive.get().asFile
+        val jar = shadowJar.get().archiveFile.get().asFile.absolutePath
+        archive.delete()
+        timeReport(reportCommand(listOf(javaExecutable, "-XX:ArchiveClassesAtExit=" + archive.absolutePath, "-jar", jar)),
+            archive.parentFile)
+        logger.lifecycle("AppCDS archive: $archive")
+        logger.lifecycle("Run with: java -XX:SharedArchiveFile=$archive -jar $jar")
+    }
+}
+
+val nativeImageMetadata by tasks.registering {
+    group = "distribution"
+    description = "Records the reflection and resource metadata nativeCompile needs by running the shadow jar under the " +
+            "GraalVM tracing agent: a text report, a JSON report and a client session over the training fixture."
+    dependsOn(shadowJar)
+    inputs.file(shadowJar.flatMap { it.archiveFile })
+    inputs.file(trainingFixture)
+    outputs.dir(nativeImageMetadataDir)
+
+    doLast {
+        val output = nativeImageMetadataDir.get().asFile
+        val workDir = layout.buildDirectory.dir("native-image-agent-run").get().asFile
+        val jar = shadowJar.get().archiveFile.get().asFile.absolutePath
+        output.deleteRecursively()
+        workDir.deleteRecursively()
+        workDir.mkdirs()
+
+        // The client session quits at once, after loading the cache the reports left and starting a refresh
+        val runs = listOf(listOf("--report"), listOf("--report=json"), emptyList())
+        runs.forEachIndexed { index, arguments ->
+            val mode = if (index == 0) "config-output-dir" else "config-merge-dir"
+            val agent = "-agentlib:native-image-agent=$mode=" + output.absolutePath
+            val process = ProcessBuilder(reportCommand(listOf(graalvmJava, agent, "-jar", jar), arguments))
+                .directory(workDir)
+                .redirectErrorStream(true)
+                .redirectOutput(File(workDir, "agent-run-$index.log"))
+                .start()
+            process.outputStream.bufferedWriter().use { it.write("q\n") }
+            val exitCode = process.waitFor()
+            if (exitCode != 0)
+                throw GradleException("Tracing run ${arguments.ifEmpty { listOf("client") }} exited with $exitCode, see " +
+                        "${workDir}/agent-run-$index.log. The agent needs GRAALVM_HOME or JAVA_HOME to point at a GraalVM.")
+        }
+        logger.lifecycle("Native image metadata: $output")
+    }
+}
+
+tasks.named("nativeCompile") {
+    dependsOn(nativeImageMetadata)
+}
+
+val startupBenchmark by tasks.registering {
+    group = "verification"
+    description = "Compares headless report start-up on the plain JVM, the JVM with the AppCDS archive and the native image " +
+            "(run nativeCompile first to include it). -PbenchmarkRuns=<n> sets the runs per variant."
+    dependsOn(appCdsArchive)
+
+    doLast {
+        val runs = (findProperty("benchmarkRuns") as String?)?.toInt() ?: 10
+        val jar = shadowJar.get().archiveFile.get().asFile.absolutePath
+        val workDir = layout.buildDirectory.dir("startup-benchmark").get().asFile
+        val binary = graalvmNative.binaries.named("main").get().imageName.get().let { name ->
+            layout.buildDirectory.dir("native/nativeCompile").get().asFile.listFiles { file -> file.nameWithoutExtension == name && file.canExecute() }
+                ?.firstOrNull()
+        }
+
+        val variants = linkedMapOf(
+            "jvm" to listOf(javaExecutable, "-jar", jar),
+            "jvm + appcds" to listOf(javaExecutable, "-XX:SharedArchiveFile=" + cdsArchive.get().asFile.absolutePath, "-jar", jar)
+        )
+        if (binary != null)
+            variants["native"] = listOf(binary.absolutePath)
+        else
+            logger.lifecycle("native: skipped, no image in build/native/nativeCompile")
+
+        logger.lifecycle(String.format("%-14s %10s %10s %10s", "variant", "median ms", "min ms", "max ms"))
+        for ((variant, launcher) in variants) {
+            val command = reportCommand(launcher)
+            timeReport(command, workDir) // warm the file system cache
+            val times = (1..runs).map { timeReport(command, workDir) }.sorted()
+            val median = if (runs % 2 == 1) times[runs / 2] else (times[runs / 2 - 1] + times[runs / 2]) / 2
+            logger.lifecycle(String.format("%-14s %10.1f %10.1f %10.1f", variant, median, times.first(), times.last()))
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package etoro;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Destination for watchlist rule firings.
+ */
+public interface AlertSink {
+
+    void fire(String ruleName, Company company, String message);
+
+    static AlertSink stdout() {
+        return (ruleName, company, message) -> System.out.println("[" + ruleName + "] " + message);
+    }
+
+    static AlertSink file(String path) {
+        return (ruleName, company, message) -> {
+            synchronized (AlertSink.class) {
+                try (PrintWriter writer = new PrintWriter(new FileWriter(path, true))) {
+                    writer.println(java.time.LocalDateTime.now() + " [" + ruleName + "] " + message);
+                } catch (IOException e) {
+                    Log.warn("Failed to write alert", "file", path, "cause", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs {@code command} with the rule name, company name and message appended as arguments.
+     */
+    static AlertSink hook(String command) {
+        List<String> base = Arrays.asList(command.split(" "));
+        return (ruleName, company, message) -> {
+            List<String> arguments = new ArrayList<>(base);
+            arguments.add(ruleName);
+            arguments.add(company.fullName);
+            arguments.add(message);
+            try {
+                new ProcessBuilder(arguments).inheritIO().start();
+            } catch (IOException e) {
+                Log.warn("Failed to run alert hook", "command", command, "cause", e);
+            }
+        };
+    }
+
+    /**
+     * Reads the {@code alerts.sink} system property: {@code stdout}, {@code file:<path>} or {@code hook:<command>}.
+     */
+    static AlertSink configured(String defaultSink) {
+        String sink = System.getProperty("alerts.sink", defaultSink);
+        if (sink.startsWith("file:"))
+            return file(sink.substring("file:".length()));
+        if (sink.startsWith("hook:"))
+            return hook(sink.substring("hook:".length()));
+        return stdout();
+    }
+}
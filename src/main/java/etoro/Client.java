@@ -1,24 +1,23 @@
 package etoro;
 
-import com.fasterxml.jackson.core.exc.StreamReadException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DatabindException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.File;
-import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.Math.*;
 
-public class Client {
+public class Client implements RefreshListener {
 
     private Map<String,Company> companies = new LinkedHashMap<>();
-    private Map<String, Company> processedCompanies = new LinkedHashMap<>();
-    private final int[] columnWidths = {50, 30, 20, 20, 20, 35, 20};
+    private List<Company> filteredCompanies = new ArrayList<>();
+    private PagedView processedCompanies;
+    private final int[] columnWidths = {50, 30, 20, 20, 24, 35, 20};
 
     private int pageIndex = 0;
     private final int pageSize = 15;
@@ -30,22 +29,35 @@ public class Client {
     private String[] rowTitles = {"Company", "Dividend Yield (after tax)", "Price", "ExDividend date", "Dividend date", "Dividend per share (after tax)", "Market Cap" };
 
     private EtoroScraper server;
-
-    List<Comparator<Company>> comparators = List.of(
-            Comparator.comparing(Company::getFullName),
-            Comparator.comparingDouble((Company c) ->
-            {
-                double price = c.getPrice();
-                return price != 0 ? c.getDividendPerShare() / c.getPrice() : 0;
-            }).reversed(),
-            Comparator.comparingDouble(Company::getPrice).reversed(),
-            Comparator.comparing(Company::getExDividendDate),
-            Comparator.comparing(Company::getDividendDate),
-            Comparator.comparing(Company::getDividendPerShare).reversed(),
-            Comparator.comparing(Company::getMarketCap).reversed()
+    private CompletableFuture<Void> refresh = CompletableFuture.completedFuture(null);
+    private final Queue<Company> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private final Queue<String> pendingRemovals = new ConcurrentLinkedQueue<>();
+    private final DividendAnalytics analytics = new DividendAnalytics();
+    private final YieldTable yields = new YieldTable(WithholdingTax.configured());
+    private long snapshotVersion = 0;
+
+    // While the main prompt waits for a key, merged rows and refresh progress are redrawn on this thread
+    private static final long REDRAW_INTERVAL_MILLIS = 1000;
+    private final ScheduledExecutorService redraw = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "client-redraw");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean awaitingCommand = false;
+    private String printedRefreshStatus = "";
+
+    List<SortSpec> comparators = List.of(
+            SortSpec.parse("name asc", rowTitles[0]),
+            SortSpec.parse("netyield desc", rowTitles[1]),
+            SortSpec.parse("price desc", rowTitles[2]),
+            SortSpec.parse("exdividend asc", rowTitles[3]),
+            SortSpec.parse("paymentdate asc", rowTitles[4]),
+            SortSpec.parse("dividend desc", rowTitles[5]),
+            SortSpec.parse("marketcap desc", rowTitles[6])
     );
+    private SortSpec currentSort = comparators.get(currentComparator);
 
-    private List<String> favourites = new ArrayList<>();
+    private UserStateStore userState;
 
 
     private void printTableHeader() {
@@ -81,12 +93,10 @@ public class Client {
         final String BLUE = "\u001B[34m";
         final String HOT_PINK = "\u001B[38;2;255;105;180m";
         String dividendReturn;
-        float dividendTax = 0.1f;
 
-        if(company.price > 0)
+        if(company.priceMicros > 0)
         {
-            float returnValue = company.dividendPerShare / company.price * 100;
-            dividendReturn = String.format("%.2f%% (%.2f%%)", returnValue, returnValue-returnValue* dividendTax);
+            dividendReturn = String.format("%.2f%% (%.2f%%)", company.grossYield * 100, company.netYield * 100);
         }
         else {
             dividendReturn = "-";
@@ -95,10 +105,12 @@ public class Client {
         String[] values = {
                 company.fullName,
                 dividendReturn,
-                String.format("%.2f", company.price),
+                String.format("%.2f", company.getPrice()),
                 company.getExDividendDateString(),
-                company.getDividendDateString(),
-                String.format("%.2f (%.2f)", company.dividendPerShare, company.dividendPerShare - company.dividendPerShare* dividendTax),
+                company.dividendEvents.size() > 1
+                        ? company.getDividendDateString() + " (+" + (company.dividendEvents.size() - 1) + ")"
+                        : company.getDividendDateString(),
+                String.format("%.2f (%.2f)", company.getDividendPerShare(), company.getDividendPerShare() * (1 - company.withholdingRate)),
                 company.getMarketCapString()
         };
 
@@ -117,7 +129,7 @@ public class Client {
                 row.append(" | ");
         }
 
-        if(company.tags.contains("FAVOURITE"))
+        if(company.tags.contains(UserStateStore.FAVOURITE))
             System.out.println(HOT_PINK + row + RESET);
         else if(company.tags.contains("NEW"))
             System.out.println(GREEN + row + RESET);
@@ -128,20 +140,25 @@ public class Client {
 
     private void filterCompaniesByTag()
     {
-        if (currentTag.equals("NONE")){
-            processedCompanies = new LinkedHashMap<>(companies);
-            sortCompanies();
-            return;
+        yields.update(companies.values(), snapshotVersion);
+        PipelineEvents.FilterCompanies event = new PipelineEvents.FilterCompanies();
+        event.begin();
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("filter", companies.size());
+        try {
+            if (currentTag.equals("NONE")) {
+                filteredCompanies = new ArrayList<>(companies.values());
+            } else {
+                filteredCompanies = companies.values().stream()
+                        .filter(company -> company.tags.contains(currentTag))
+                        .collect(Collectors.toList());
+            }
+        } finally {
+            stage.close();
         }
-
-        processedCompanies = companies.values().stream()
-                .filter(company -> company.tags.contains(currentTag))
-                .collect(Collectors.toMap(
-                        Company::getFullName,
-                        Function.identity(),
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        event.tag = currentTag;
+        event.companies = companies.size();
+        event.matched = filteredCompanies.size();
+        event.commit();
         sortCompanies();
     }
 
@@ -163,17 +180,12 @@ public class Client {
         pageIndex = 0;
     }
 
+    /**
+     * Rows are only ordered as far as the pages that get displayed, see {@link PagedView}.
+     */
     private void sortCompanies()
     {
-        processedCompanies = processedCompanies.values()
-                .stream()
-                .sorted(comparators.get(currentComparator))
-                .collect(Collectors.toMap(
-                        Company::getFullName,
-                        Function.identity(),
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+        processedCompanies = new PagedView(filteredCompanies, currentSort.getComparator());
     }
 
     private void toggleSorting()
@@ -181,9 +193,26 @@ public class Client {
         currentComparator += 1;
         if (currentComparator >= comparators.size())
             currentComparator = 0;
+        currentSort = comparators.get(currentComparator);
         sortCompanies();
     }
 
+    private void enterCustomSorting()
+    {
+        System.out.println("Enter sort keys, e.g. \"sector asc, yield desc\" (keys: " + String.join(", ", SortSpec.keys()) + "):");
+        String line = new Scanner(System.in).nextLine().strip();
+        if (line.isEmpty())
+            return;
+
+        try {
+            currentSort = SortSpec.parse(line);
+            sortCompanies();
+            pageIndex = 0;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
     public void extractTags()
     {
         companies.values().forEach(company -> {tags.addAll(company.tags);});
@@ -197,12 +226,87 @@ public class Client {
         System.out.println(" [a] - view previous page");
         System.out.println(" [d] - view next page");
         System.out.println(" [w] - enter page index");
-        System.out.println(" [s] - toggle sorting (" + rowTitles[currentComparator] + ")");
+        System.out.println(" [s] - toggle sorting (" + currentSort.getLabel() + ")");
+        System.out.println(" [o] - custom sorting");
         System.out.println(" [f] - toggle filtering (" + currentTag +")");
-        System.out.println(" [x] - edit favourites");
+        System.out.println(" [x] - edit favourites, tags and notes");
+        System.out.println(" [i] - dividend income and sector insights");
+        System.out.println(" [r] - reload view");
         System.out.println(" [q] - quit");
     }
 
+    private void printRefreshStatus()
+    {
+        printedRefreshStatus = refreshStatus();
+        if (!printedRefreshStatus.isEmpty())
+            System.out.println(printedRefreshStatus);
+    }
+
+    private String refreshStatus()
+    {
+        if (refresh.isDone())
+            return refresh.isCompletedExceptionally() ? "Background refresh failed, showing cached data." : "";
+
+        ProgressTracker progress = server.getProgressTracker();
+        if (progress == null)
+            return "Refreshing: downloading dividend calendar...";
+        return "Refreshing: " + progress.getCompaniesProcessed() + "/" + progress.getCompaniesCount()
+                + " companies (" + progress.getProgress() + "%)";
+    }
+
+    /**
+     * Scheduled on the redraw thread. Only touches the table while the main loop is blocked on the prompt,
+     * so sub-menus reading their own input are never cleared away.
+     */
+    private synchronized void redrawIfChanged()
+    {
+        if (!awaitingCommand)
+            return;
+        if (mergePendingUpdates() || !refreshStatus().equals(printedRefreshStatus))
+            printStockTable(pageIndex);
+    }
+
+    @Override
+    public void companyUpdated(Company company)
+    {
+        pendingUpdates.add(company);
+    }
+
+    @Override
+    public void companyRemoved(String companyName)
+    {
+        pendingRemovals.add(companyName);
+    }
+
+    /**
+     * @return whether the table changed
+     */
+    private boolean mergePendingUpdates()
+    {
+        boolean taxChanged = yields.getTax().reloadIfModified();
+        if (taxChanged)
+            filterCompaniesByTag();
+        if (pendingUpdates.isEmpty() && pendingRemovals.isEmpty())
+            return taxChanged;
+
+        String companyName;
+        while ((companyName = pendingRemovals.poll()) != null)
+            companies.remove(companyName);
+
+        Company company;
+        while ((company = pendingUpdates.poll()) != null) {
+            userState.applyTo(company);
+            companies.put(company.fullName, company);
+        }
+
+        snapshotVersion++;
+        extractTags();
+        filterCompaniesByTag();
+        int pages = (processedCompanies.size() + pageSize - 1) / pageSize;
+        pageIndex = max(0, min(pageIndex, pages - 1));
+        return true;
+    }
+
     private void printPageNumber()
     {
         StringBuilder output = new StringBuilder();
@@ -215,14 +319,27 @@ public class Client {
         System.out.println(output);
     }
 
-    private void printStockTable(int page)
+    void printStockTable(int page)
+    {
+        // Sorting the page is its own stage, and stages must not nest
+        List<Company> currentPage = processedCompanies.page(page, pageSize);
+        PipelineEvents.RenderTable event = new PipelineEvents.RenderTable();
+        event.begin();
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("render", pageSize);
+        try {
+            renderStockTable(currentPage);
+            event.rows = currentPage.size();
+        } finally {
+            stage.close();
+        }
+        event.page = page;
+        event.commit();
+    }
+
+    private void renderStockTable(List<Company> currentPage)
     {
         clearConsole();
         printTableHeader();
-        List<Company> allCompanies = new ArrayList<>(processedCompanies.values());
-        int from = page * pageSize;
-        int to = min(from + pageSize, allCompanies.size());
-        List<Company> currentPage = allCompanies.subList(from, to);
         for(Company company : currentPage)
         {
             printRow(company);
@@ -230,6 +347,7 @@ public class Client {
         System.out.println('\n');
         printPageNumber();
         System.out.println('\n');
+        printRefreshStatus();
         printInstructions();
     }
 
@@ -298,19 +416,24 @@ public class Client {
             }
 
             System.out.println("Found company: " + bestMatch);
-            boolean exists = false;
-            if (favourites.contains(bestMatch)) {
-                exists = true;
+            String note = userState.getNote(bestMatch);
+            if (!userState.getTags(bestMatch).isEmpty())
+                System.out.println("Tags: " + String.join(", ", userState.getTags(bestMatch)));
+            if (note != null)
+                System.out.println("Note: " + note);
+
+            boolean exists = userState.isFavourite(bestMatch);
+            if (exists) {
                 System.out.println("Company already is in the list. Remove from favourites?");
                 System.out.println(" [y] - Yes, remove from favourites");
-                System.out.println(" [n] - No, search again");
-                System.out.println(" [q] - Quit");
             } else {
                 System.out.println("Add to favourites?");
                 System.out.println(" [y] - Yes, add to favourites");
-                System.out.println(" [n] - No, search again");
-                System.out.println(" [q] - Quit");
             }
+            System.out.println(" [t] - Add or remove a tag");
+            System.out.println(" [m] - Edit note");
+            System.out.println(" [n] - No, search again");
+            System.out.println(" [q] - Quit");
 
             while(true) {
                 line = scanner.nextLine().strip().toLowerCase();
@@ -321,27 +444,60 @@ public class Client {
 
                 if (line.equals("y"))
                 {
+                    userState.setFavourite(bestMatch, !exists);
                     if (exists) {
-                        favourites.remove(bestMatch);
-                        companies.get(bestMatch).removeTag("FAVOURITE");
+                        companies.get(bestMatch).removeTag(UserStateStore.FAVOURITE);
                         System.out.println("Removed " + bestMatch + " from favourites");
                     } else {
-                        favourites.add(bestMatch);
-                        companies.get(bestMatch).addTag("FAVOURITE");
+                        companies.get(bestMatch).addTag(UserStateStore.FAVOURITE);
                         System.out.println("Added " + bestMatch + " to favourites");
                     }
                     break;
                 }
 
+                else if (line.equals("t")) {
+                    System.out.println("Enter tag:");
+                    String tag = scanner.nextLine().strip().toUpperCase();
+                    if (tag.isEmpty() || tag.equals("NONE") || tag.equals("NEW") || tag.equals(UserStateStore.FAVOURITE)) {
+                        System.out.println("This tag can't be used.");
+                        continue;
+                    }
+                    if (userState.getTags(bestMatch).contains(tag)) {
+                        userState.setTag(bestMatch, tag, false);
+                        companies.get(bestMatch).removeTag(tag);
+                        System.out.println("Removed tag " + tag + " from " + bestMatch);
+                    } else {
+                        userState.setTag(bestMatch, tag, true);
+                        companies.get(bestMatch).addTag(tag);
+                        System.out.println("Added tag " + tag + " to " + bestMatch);
+                    }
+                    break;
+                }
+
+                else if (line.equals("m")) {
+                    System.out.println("Enter note (leave empty to remove):");
+                    userState.setNote(bestMatch, scanner.nextLine().strip());
+                    System.out.println("Saved note for " + bestMatch);
+                    break;
+                }
+
                 else if (line.equals("n")){
                     break;
                 }
-                System.out.println("Please enter y, n or q.");
+                System.out.println("Please enter y, t, m, n or q.");
 
             }
         }
     }
 
+    private void printInsights()
+    {
+        clearConsole();
+        analytics.analyse(companies.values(), snapshotVersion).print(System.out);
+        System.out.println("\nPress enter to go back.");
+        new Scanner(System.in).nextLine();
+    }
+
     private int readInt(int min, int max) {
         Scanner scanner = new Scanner(System.in);
         while (true) {
@@ -372,43 +528,72 @@ public class Client {
         }
     }
 
-    private void loadFavourites()
+    /**
+     * Shows {@code server}'s companies without the console loop or user state, for headless runs
+     * such as the scale harness.
+     */
+    void showCompanies(EtoroScraper server)
+    {
+        this.server = server;
+        companies.clear();
+        server.companies.values().forEach(company -> companies.put(company.fullName, new Company(company)));
+        snapshotVersion++;
+        tags.clear();
+        extractTags();
+        filterCompaniesByTag();
+    }
+
+    void setView(String tag, SortSpec sort)
+    {
+        currentTag = tag;
+        currentSort = sort;
+        pageIndex = 0;
+        filterCompaniesByTag();
+    }
+
+    int getPageCount()
+    {
+        return (processedCompanies.size() + pageSize - 1) / pageSize;
+    }
+
+    private void loadUserState()
     {
         System.out.println("Loading favourites...");
-        ObjectMapper mapper = new ObjectMapper();
-        try{
-            TypeReference<List<String>> typeReference = new TypeReference<>() {};
-            this.favourites = mapper.readValue(new File("favourites.txt"), typeReference);
-            for (String company : favourites)
-            {
-                this.companies.get(company).addTag("FAVOURITE");
-            }
-            System.out.println("Favourites loaded successfully.");
-        }catch (Exception e) {
-            System.out.println("Failed to load favourites!");
-        }
+        userState = UserStateStore.load(Path.of("userstate.json"), Path.of("favourites.txt"));
+        System.out.println("Favourites loaded successfully.");
     }
 
-    private void saveFavourites()
+    private void rebuildTags()
     {
-        System.out.println("Saving favourites...");
-        ObjectMapper mapper = new ObjectMapper();
-        try{
-            mapper.writeValue(new File("favourites.txt"), favourites);
-            System.out.println("Favourites saved successfully.");
-        }
-        catch(Exception e)
-        {
-            System.out.println("Failed to save favourites!");
-        }
+        tags.clear();
+        extractTags();
+        if (!tags.contains(currentTag))
+            currentTag = "NONE";
+        filterCompaniesByTag();
     }
 
     public void startClient(){
         this.server = new EtoroScraper();
-        server.loadCompanies();
-        this.companies = new LinkedHashMap<>(server.companies);
-        this.processedCompanies = new LinkedHashMap<>(companies);
-        loadFavourites();
+        loadUserState();
+        WatchRules watchRules = WatchRules.configured("file:alerts.log");
+        if (watchRules != null) {
+            watchRules.setUserTags(userState::getAllTags);
+            server.addRefreshListener(watchRules);
+        }
+
+        boolean cached = server.loadCachedCompanies();
+        if (!cached)
+            server.loadCompanies();
+
+        server.companies.values().forEach(company -> companies.put(company.fullName, new Company(company)));
+        userState.applyTo(companies);
+        filterCompaniesByTag();
+        if (cached) {
+            // The table owns the console from here on, background refresh output goes to a file
+            Log.setOutput(Path.of(System.getProperty("log.file", "etoro.log")));
+            server.addRefreshListener(this);
+            refresh = server.refreshCompaniesAsync();
+        }
         toggleSorting();
         extractTags();
 
@@ -416,9 +601,13 @@ public class Client {
         printStockTable(0);
 
         Scanner scanner = new Scanner(System.in);
+        redraw.scheduleWithFixedDelay(this::redrawIfChanged, REDRAW_INTERVAL_MILLIS, REDRAW_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 
         while(true)
         {
+            synchronized (this) {
+                awaitingCommand = true;
+            }
             try {
                 String line = scanner.nextLine();
                 input = line.charAt(0);
@@ -426,11 +615,20 @@ public class Client {
             {
                 input = 'q';
             }
+            // Waits for a redraw in progress to finish before the command takes over the console
+            synchronized (this) {
+                awaitingCommand = false;
+            }
 
             switch(input)
             {
                 case 'q': {
-                    saveFavourites();
+                    redraw.shutdownNow();
+                    userState.close();
+                    if (!refresh.isDone()) {
+                        System.out.println("Waiting for background refresh to finish...");
+                        refresh.exceptionally(e -> null).join();
+                    }
                     return;
                 }
 
@@ -467,23 +665,35 @@ public class Client {
                     break;
                 }
 
+                case 'o':
+                {
+                    enterCustomSorting();
+                    break;
+                }
+
+                case 'i':
+                {
+                    printInsights();
+                    break;
+                }
+
                 case 'x':
                 {
                     toggleFavorites();
-                    if(favourites.isEmpty())
-                    {
-                        currentTag = "NONE";
-                        tags.remove("FAVOURITE");
-                        filterCompaniesByTag();
-                    }else{
-                        extractTags();
-                    }
+                    rebuildTags();
+                    break;
+                }
+
+                case 'r':
+                {
+                    // Merged and redrawn below
                     break;
                 }
 
                 default:
                     break;
             }
+            mergePendingUpdates();
             printStockTable(pageIndex);
         }
     }
@@ -1,31 +1,39 @@
 package etoro;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 public class Company{
 
+    private static final DateTimeFormatter DISPLAY_DATE_FORMAT = DateTimeFormatter.ofPattern("dd MMMM yyyy", Locale.ENGLISH);
+
     public String name;
     public String fullName;
     public String sector;
-    @JsonFormat
-    (pattern = "dd MMM yyyy")
-    public Date exDividendDate;
-    @JsonFormat
-    (pattern = "dd MMM yyyy")
-    public Date dividendDate;
-    public float price;
+    public long exDividendEpochDay;
+    public long dividendEpochDay;
+    /** Millionths of a currency unit, see {@link Money}. */
+    public long priceMicros;
     public String marketHref;
-    public float dividendPerShare;
-    public BigDecimal marketCap;
+    /** Millionths of a currency unit, see {@link Money}. */
+    public long dividendPerShareMicros;
+    /** Whole currency units, 0 when unknown. */
+    public long marketCap;
     public Set<String> tags;
+    /**
+     * All known dividends ordered by ex-dividend date. The date and dividend fields above mirror the next one,
+     * see {@link #selectNextEvent(long)}.
+     */
+    public List<DividendEvent> dividendEvents = new ArrayList<>();
+    /** Filled in by {@link YieldTable}, not persisted. */
+    @JsonIgnore
+    public double withholdingRate;
+    @JsonIgnore
+    public double grossYield;
+    @JsonIgnore
+    public double netYield;
 
     public Company(){}
 
@@ -35,11 +43,11 @@ public class Company{
         private final String fullName;
         private String marketHref;
         private String sector;
-        private Date exDividendDate;
-        private Date dividendDate;
-        private float price;
-        private float dividendPerShare;
-        public BigDecimal marketCap;
+        private long exDividendEpochDay;
+        private long dividendEpochDay;
+        private long priceMicros;
+        private long dividendPerShareMicros;
+        private long marketCap;
         private Set<String> tags = new HashSet<>();
 
         public Builder(String name, String fullName) {
@@ -53,23 +61,23 @@ public class Company{
             return this;
         }
 
-        public Builder exDividendDate(Date exDividendDate) {
-            this.exDividendDate = exDividendDate;
+        public Builder exDividendDate(LocalDate exDividendDate) {
+            this.exDividendEpochDay = exDividendDate.toEpochDay();
             return this;
         }
 
-        public Builder dividendDate(Date DividendDate) {
-            this.dividendDate = DividendDate;
+        public Builder dividendDate(LocalDate dividendDate) {
+            this.dividendEpochDay = dividendDate.toEpochDay();
             return this;
         }
 
-        public Builder price(float price) {
-            this.price = price;
+        public Builder priceMicros(long priceMicros) {
+            this.priceMicros = priceMicros;
             return this;
         }
 
-        public Builder dividendPerShare(float dividendPerShare) {
-            this.dividendPerShare = dividendPerShare;
+        public Builder dividendPerShareMicros(long dividendPerShareMicros) {
+            this.dividendPerShareMicros = dividendPerShareMicros;
             return this;
         }
 
@@ -98,7 +106,7 @@ public class Company{
             return this;
         }
 
-        public Builder marketCap(BigDecimal marketCap) {
+        public Builder marketCap(long marketCap) {
             this.marketCap = marketCap;
             return this;
         }
@@ -112,22 +120,112 @@ public class Company{
         this.name = builder.name;
         this.fullName = builder.fullName;
         this.sector = builder.sector;
-        this.price = builder.price;
+        this.priceMicros = builder.priceMicros;
         this.marketHref = builder.marketHref;
-        this.dividendPerShare = builder.dividendPerShare;
-        this.exDividendDate = builder.exDividendDate;
-        this.dividendDate = builder.dividendDate;
+        this.dividendPerShareMicros = builder.dividendPerShareMicros;
+        this.exDividendEpochDay = builder.exDividendEpochDay;
+        this.dividendEpochDay = builder.dividendEpochDay;
+        this.marketCap = builder.marketCap;
         this.tags = builder.tags;
+        if (dividendEpochDay != 0)
+            this.dividendEvents.add(DividendEvent.of(this));
+    }
+
+    public Company(Company other) {
+        this.name = other.name;
+        this.fullName = other.fullName;
+        this.sector = other.sector;
+        this.priceMicros = other.priceMicros;
+        this.marketHref = other.marketHref;
+        this.dividendPerShareMicros = other.dividendPerShareMicros;
+        this.exDividendEpochDay = other.exDividendEpochDay;
+        this.dividendEpochDay = other.dividendEpochDay;
+        this.marketCap = other.marketCap;
+        this.tags = new HashSet<>(other.tags);
+        this.dividendEvents = new ArrayList<>(other.dividendEvents);
+        this.withholdingRate = other.withholdingRate;
+        this.grossYield = other.grossYield;
+        this.netYield = other.netYield;
+    }
+
+    @JsonIgnore
+    public LocalDate getExDividendDate()
+    {
+        return LocalDate.ofEpochDay(exDividendEpochDay);
+    }
+
+    @JsonIgnore
+    public LocalDate getDividendDate()
+    {
+        return LocalDate.ofEpochDay(dividendEpochDay);
     }
 
-    public Date getExDividendDate()
+    public long getExDividendEpochDay()
     {
-        return exDividendDate;
+        return exDividendEpochDay;
     }
 
-    public Date getDividendDate()
+    public long getDividendEpochDay()
     {
-        return dividendDate;
+        return dividendEpochDay;
+    }
+
+    /**
+     * Adds {@code events}, which replace all known events on their ex-dividend dates, then selects the next event.
+     * Several events on one date, such as a regular and a special dividend, are all kept.
+     *
+     * @return whether the events or the selected next event changed
+     */
+    public boolean mergeDividendEvents(Collection<DividendEvent> events, long today) {
+        Set<Long> replacedDays = new HashSet<>();
+        for (DividendEvent event : events)
+            replacedDays.add(event.exDividendEpochDay());
+        Set<DividendEvent> sorted = new TreeSet<>(DividendEvent.ORDER);
+        for (DividendEvent event : dividendEvents) {
+            if (!replacedDays.contains(event.exDividendEpochDay()))
+                sorted.add(event);
+        }
+        sorted.addAll(events);
+
+        List<DividendEvent> merged = new ArrayList<>(sorted);
+        boolean changed = !merged.equals(dividendEvents);
+        dividendEvents = merged;
+        return selectNextEvent(today) || changed;
+    }
+
+    /**
+     * Drops events paid before {@code today} and selects the next event.
+     *
+     * @return whether anything changed
+     */
+    public boolean removePastEvents(long today) {
+        boolean removed = dividendEvents.removeIf(event -> event.dividendEpochDay() < today);
+        return selectNextEvent(today) || removed;
+    }
+
+    /**
+     * Copies the first event not yet paid on {@code today}, or the last event if all are paid,
+     * into the date and dividend fields.
+     *
+     * @return whether those fields changed
+     */
+    public boolean selectNextEvent(long today) {
+        if (dividendEvents.isEmpty())
+            return false;
+
+        DividendEvent next = dividendEvents.get(dividendEvents.size() - 1);
+        for (DividendEvent event : dividendEvents) {
+            if (event.dividendEpochDay() >= today) {
+                next = event;
+                break;
+            }
+        }
+        if (next.equals(DividendEvent.of(this)))
+            return false;
+        exDividendEpochDay = next.exDividendEpochDay();
+        dividendEpochDay = next.dividendEpochDay();
+        dividendPerShareMicros = next.dividendPerShareMicros();
+        return true;
     }
 
     public void addTag(String tag) {
@@ -141,80 +239,61 @@ public class Company{
 
     @JsonIgnore
     public String getExDividendDateString() {
-        LocalDate date = exDividendDate.toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDate();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy", Locale.ENGLISH);
-        return date.format(formatter);
+        return DISPLAY_DATE_FORMAT.format(getExDividendDate());
     }
 
     @JsonIgnore
     public String getDividendDateString() {
-        LocalDate date = dividendDate.toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDate();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy", Locale.ENGLISH);
-        return date.format(formatter);
+        return DISPLAY_DATE_FORMAT.format(getDividendDate());
     }
 
     public String getFullName() {
         return fullName;
     }
 
-    public double getPrice(){return price;}
+    public double getPrice(){return Money.toDouble(priceMicros);}
 
-    public double getDividendPerShare() {return dividendPerShare;}
+    public double getDividendPerShare() {return Money.toDouble(dividendPerShareMicros);}
 
-    public BigDecimal getMarketCap() {
+    @JsonIgnore
+    public double getDividendYield() {
+        return priceMicros != 0 ? (double) dividendPerShareMicros / priceMicros : 0;
+    }
+
+    public long getMarketCap() {
         return marketCap;
     }
 
     @Override
     public String toString() {
         return "etoro.Company [name=" + name + ", fullName=" + fullName + ", sector=" + sector
-                + ", price=" + price  + ", dividendPerShare=" + dividendPerShare
+                + ", price=" + Money.format(priceMicros)  + ", dividendPerShare=" + Money.format(dividendPerShareMicros)
                 + ", exDividendDate=" + getExDividendDate() + ", DividendDate=" + getDividendDate()  + "]";
     }
 
+    /**
+     * Parses a market cap as shown on the market page, e.g. {@code 1.23B} or {@code 850,000}, into whole units.
+     */
     @JsonIgnore
-    public static BigDecimal parseMarketCap(String marketCapString) {
-        marketCapString = marketCapString.strip().toUpperCase();
-        BigDecimal multiplier = BigDecimal.ONE;
-
-        if (marketCapString.endsWith("T"))
-        {
-            multiplier = new BigDecimal("1000000000000");
-        }
-        else if (marketCapString.endsWith("B"))
-        {
-            multiplier = new BigDecimal("1000000000");
-        }
-        else if (marketCapString.endsWith("M"))
-        {
-            multiplier = new BigDecimal("1000000");
-        }
-        marketCapString = marketCapString.substring(0,marketCapString.length()-1);
-        return new BigDecimal(marketCapString).multiply(multiplier);
+    public static long parseMarketCap(String marketCapString) {
+        return NumberParser.parseWhole(marketCapString);
     }
 
     @JsonIgnore
     public String getMarketCapString()
     {
         String[] suffixes = {"", "K", "M", "B", "T"};
-        BigDecimal thousand = BigDecimal.valueOf(1000);
 
-        BigDecimal marketCapValue = marketCap;
+        long divisor = 1;
         int marketCapSuffixIndex = 0;
-
-
-        while (marketCapValue.compareTo(thousand) >= 0 && marketCapSuffixIndex < suffixes.length)
+        while (marketCapSuffixIndex < suffixes.length - 1 && Math.abs(marketCap) / divisor >= 1000)
         {
-            marketCapValue = marketCapValue.divide(thousand);
+            divisor *= 1000;
             marketCapSuffixIndex += 1;
         }
 
-        marketCapValue = marketCapValue.setScale(2, RoundingMode.HALF_UP);
-        String marketCapString = marketCapValue.toString();
-        return marketCapString + suffixes[marketCapSuffixIndex];
+        // Hundredths of the displayed unit, rounded half up
+        long hundredths = divisor == 1 ? marketCap * 100 : (marketCap / (divisor / 1000) + 5) / 10;
+        return hundredths / 100 + "." + (hundredths % 100 < 10 ? "0" : "") + hundredths % 100 + suffixes[marketCapSuffixIndex];
     }
 }
@@ -0,0 +1,12 @@
+package etoro;
+
+/**
+ * Market page data a {@link DividendSource} provides for a single company.
+ *
+ * @param priceMicros price in millionths of a currency unit, see {@link Money}
+ * @param marketCap   market cap in whole currency units, 0 when unknown
+ */
+public record CompanyDetails(long priceMicros, long marketCap) {
+
+    public static final CompanyDetails EMPTY = new CompanyDetails(0, 0);
+}
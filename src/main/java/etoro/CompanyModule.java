@@ -0,0 +1,231 @@
+package etoro;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streaming (de)serialization of {@link Company} that bypasses databind reflection.
+ * Dates keep the "dd MMM yyyy" format of existing companies.json files, but are converted
+ * straight to and from epoch days instead of going through {@link java.util.Date}.
+ */
+public class CompanyModule extends SimpleModule {
+
+    private static final long serialVersionUID = 1L;
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static volatile DateTimeFormatter localizedFileDateFormat = DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.getDefault());
+    private static final DateTimeFormatter ENGLISH_FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.ENGLISH);
+
+    public CompanyModule() {
+        super("CompanyModule");
+        addSerializer(Company.class, new Serializer());
+        addDeserializer(Company.class, new Deserializer());
+        addSerializer(DividendEvent.class, new EventSerializer());
+    }
+
+    static String formatDate(long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        char[] chars = new char[11];
+        int day = date.getDayOfMonth();
+        chars[0] = (char) ('0' + day / 10);
+        chars[1] = (char) ('0' + day % 10);
+        chars[2] = ' ';
+        MONTHS[date.getMonthValue() - 1].getChars(0, 3, chars, 3);
+        chars[6] = ' ';
+        int year = date.getYear();
+        for (int i = 10; i >= 7; i--) {
+            chars[i] = (char) ('0' + year % 10);
+            year /= 10;
+        }
+        return new String(chars);
+    }
+
+    static long parseDate(String text) {
+        if (text.length() == 11 && text.charAt(2) == ' ' && text.charAt(6) == ' ') {
+            for (int month = 0; month < MONTHS.length; month++) {
+                if (text.regionMatches(true, 3, MONTHS[month], 0, 3)) {
+                    int day = digits(text, 0, 2);
+                    int year = digits(text, 7, 11);
+                    if (day > 0 && year >= 0)
+                        return LocalDate.of(year, month + 1, day).toEpochDay();
+                }
+            }
+        }
+        // Files written by databind use the default locale's month names
+        DateTimeFormatter localized = localizedFileDateFormat;
+        if (!localized.getLocale().equals(Locale.getDefault()))
+            localizedFileDateFormat = localized = DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.getDefault());
+        try {
+            return LocalDate.parse(text, localized).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return LocalDate.parse(text, ENGLISH_FILE_DATE_FORMAT).toEpochDay();
+        }
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    static class Serializer extends StdSerializer<Company> {
+
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(Company.class);
+        }
+
+        @Override
+        public void serialize(Company company, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("name", company.name);
+            generator.writeStringField("fullName", company.fullName);
+            generator.writeStringField("sector", company.sector);
+            generator.writeStringField("exDividendDate", formatDate(company.exDividendEpochDay));
+            generator.writeStringField("dividendDate", formatDate(company.dividendEpochDay));
+            generator.writeFieldName("price");
+            generator.writeNumber(Money.format(company.priceMicros));
+            generator.writeStringField("marketHref", company.marketHref);
+            generator.writeFieldName("dividendPerShare");
+            generator.writeNumber(Money.format(company.dividendPerShareMicros));
+            generator.writeNumberField("marketCap", company.marketCap);
+            generator.writeArrayFieldStart("tags");
+            if (company.tags != null) {
+                for (String tag : company.tags)
+                    generator.writeString(tag);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("dividendEvents");
+            for (DividendEvent event : company.dividendEvents)
+                writeEvent(event, generator);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    static class EventSerializer extends StdSerializer<DividendEvent> {
+
+        private static final long serialVersionUID = 1L;
+
+        EventSerializer() {
+            super(DividendEvent.class);
+        }
+
+        @Override
+        public void serialize(DividendEvent event, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeEvent(event, generator);
+        }
+    }
+
+    private static void writeEvent(DividendEvent event, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("exDividendDate", formatDate(event.exDividendEpochDay()));
+        generator.writeStringField("dividendDate", formatDate(event.dividendEpochDay()));
+        generator.writeFieldName("dividendPerShare");
+        generator.writeNumber(Money.format(event.dividendPerShareMicros()));
+        generator.writeEndObject();
+    }
+
+    static class Deserializer extends StdDeserializer<Company> {
+
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() {
+            super(Company.class);
+        }
+
+        @Override
+        public Company deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT)
+                return (Company) context.handleUnexpectedToken(Company.class, parser);
+
+            Company company = new Company();
+            company.tags = new HashSet<>();
+
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL)
+                    continue;
+
+                switch (field) {
+                    case "name" -> company.name = parser.getText();
+                    case "fullName" -> company.fullName = parser.getText();
+                    case "sector" -> company.sector = parser.getText();
+                    case "exDividendDate" -> company.exDividendEpochDay = parseDate(parser.getText());
+                    case "dividendDate" -> company.dividendEpochDay = parseDate(parser.getText());
+                    case "price" -> company.priceMicros = readScaled(parser, Money.SCALE);
+                    case "marketHref" -> company.marketHref = parser.getText();
+                    case "dividendPerShare" -> company.dividendPerShareMicros = readScaled(parser, Money.SCALE);
+                    case "marketCap" -> company.marketCap = readScaled(parser, 0);
+                    case "tags" -> readTags(parser, company.tags);
+                    case "dividendEvents" -> readEvents(parser, company.dividendEvents);
+                    default -> parser.skipChildren();
+                }
+            }
+            // Files written before dividend events were tracked only have the top-level fields
+            if (company.dividendEvents.isEmpty() && company.dividendEpochDay != 0)
+                company.dividendEvents.add(DividendEvent.of(company));
+            return company;
+        }
+
+        private void readEvents(JsonParser parser, List<DividendEvent> events) throws IOException {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                long exDividendEpochDay = 0;
+                long dividendEpochDay = 0;
+                long dividendPerShareMicros = 0;
+                String field;
+                while ((field = parser.nextFieldName()) != null) {
+                    if (parser.nextToken() == JsonToken.VALUE_NULL)
+                        continue;
+                    switch (field) {
+                        case "exDividendDate" -> exDividendEpochDay = parseDate(parser.getText());
+                        case "dividendDate" -> dividendEpochDay = parseDate(parser.getText());
+                        case "dividendPerShare" -> dividendPerShareMicros = readScaled(parser, Money.SCALE);
+                        default -> parser.skipChildren();
+                    }
+                }
+                events.add(new DividendEvent(exDividendEpochDay, dividendEpochDay, dividendPerShareMicros));
+            }
+        }
+
+        /**
+         * Parses the number straight from the parser's buffer, so values like 0.1 keep their exact decimal
+         * value instead of going through float. Older files wrote market caps as 1.2E+12.
+         */
+        private long readScaled(JsonParser parser, int scale) throws IOException {
+            return NumberParser.parseScaled(
+                    CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()),
+                    0, parser.getTextLength(), scale);
+        }
+
+        private void readTags(JsonParser parser, Set<String> tags) throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_STRING)
+                    tags.add(parser.getText());
+            }
+        }
+    }
+}
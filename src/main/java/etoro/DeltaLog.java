@@ -0,0 +1,246 @@
+package etoro;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Appends the changes of every refresh to an NDJSON file, one record per added, removed or changed company.
+ * Records carry a sequence number that keeps increasing across runs, so a consumer can resume after
+ * the last sequence it processed with {@link #readFrom(Path, long, Consumer)} instead of diffing companies.json.
+ * <p>
+ * Changes are collected from the scraper's refresh events and collapsed per company, so a row that is
+ * touched several times during one refresh produces a single record.
+ */
+public class DeltaLog implements RefreshListener {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new CompanyModule());
+
+    private record Field(String name, Function<Company, Object> value) {}
+
+    private static final List<Field> FIELDS = List.of(
+            new Field("name", company -> company.name),
+            new Field("sector", company -> company.sector),
+            new Field("exDividendDate", company -> CompanyModule.formatDate(company.exDividendEpochDay)),
+            new Field("dividendDate", company -> CompanyModule.formatDate(company.dividendEpochDay)),
+            new Field("price", company -> BigDecimal.valueOf(company.priceMicros, Money.SCALE).stripTrailingZeros()),
+            new Field("marketHref", company -> company.marketHref),
+            new Field("dividendPerShare", company -> BigDecimal.valueOf(company.dividendPerShareMicros, Money.SCALE).stripTrailingZeros()),
+            new Field("marketCap", company -> company.marketCap),
+            new Field("tags", company -> new TreeSet<>(company.tags)),
+            new Field("dividendEvents", company -> List.copyOf(company.dividendEvents))
+    );
+
+    private final Path file;
+    private final Map<String, Company> known = new HashMap<>();
+    private final Map<String, Optional<Company>> before = new LinkedHashMap<>();
+    private final Map<String, Optional<Company>> after = new HashMap<>();
+    private boolean primed = false;
+    private long sequence;
+
+    public DeltaLog(Path file) {
+        this.file = file;
+        this.sequence = recover(file);
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public synchronized void refreshStarted(Map<String, Company> companies) {
+        if (primed)
+            return;
+        companies.values().forEach(company -> known.put(company.fullName, new Company(company)));
+        primed = true;
+    }
+
+    @Override
+    public synchronized void companyUpdated(Company company) {
+        before.putIfAbsent(company.fullName, Optional.ofNullable(known.get(company.fullName)));
+        after.put(company.fullName, Optional.of(company));
+    }
+
+    @Override
+    public synchronized void companyRemoved(String companyName) {
+        before.putIfAbsent(companyName, Optional.ofNullable(known.get(companyName)));
+        after.put(companyName, Optional.empty());
+    }
+
+    @Override
+    public synchronized void refreshFinished() {
+        if (before.isEmpty())
+            return;
+
+        String refreshedAt = Instant.now().toString();
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.setRootValueSeparator(null);
+            for (Map.Entry<String, Optional<Company>> entry : before.entrySet()) {
+                String companyName = entry.getKey();
+                Company previous = entry.getValue().orElse(null);
+                Company current = after.get(companyName).orElse(null);
+                if (writeRecord(generator, refreshedAt, companyName, previous, current))
+                    generator.writeRaw('\n');
+
+                if (current == null)
+                    known.remove(companyName);
+                else
+                    known.put(companyName, current);
+            }
+        } catch (IOException e) {
+            Log.error("Failed to write delta log", "file", file, "cause", e);
+        } finally {
+            before.clear();
+            after.clear();
+        }
+    }
+
+    private boolean writeRecord(JsonGenerator generator, String refreshedAt, String companyName,
+                                Company previous, Company current) throws IOException {
+        if (previous == null && current == null)
+            return false;
+
+        Map<String, Object[]> changes = new LinkedHashMap<>();
+        if (previous != null && current != null) {
+            for (Field field : FIELDS) {
+                Object oldValue = field.value().apply(previous);
+                Object newValue = field.value().apply(current);
+                if (!Objects.equals(oldValue, newValue))
+                    changes.put(field.name(), new Object[]{oldValue, newValue});
+            }
+            if (changes.isEmpty())
+                return false;
+        }
+
+        generator.writeStartObject();
+        generator.writeNumberField("seq", ++sequence);
+        generator.writeStringField("refreshedAt", refreshedAt);
+        generator.writeStringField("company", companyName);
+        if (previous == null) {
+            generator.writeStringField("op", "added");
+            generator.writeObjectField("record", current);
+        } else if (current == null) {
+            generator.writeStringField("op", "removed");
+        } else {
+            generator.writeStringField("op", "changed");
+            generator.writeObjectFieldStart("changes");
+            for (Map.Entry<String, Object[]> change : changes.entrySet()) {
+                generator.writeObjectFieldStart(change.getKey());
+                generator.writeObjectField("old", change.getValue()[0]);
+                generator.writeObjectField("new", change.getValue()[1]);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        return true;
+    }
+
+    /**
+     * Streams the records of {@code file} whose sequence number is greater than {@code afterSequence}.
+     * An incomplete last line, e.g. a record still being written, is skipped.
+     */
+    public static void readFrom(Path file, long afterSequence, Consumer<JsonNode> consumer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String next = reader.readLine();
+                if (!line.isBlank()) {
+                    JsonNode record;
+                    try {
+                        record = objectMapper.readTree(line);
+                    } catch (IOException e) {
+                        if (next == null)
+                            return;
+                        throw e;
+                    }
+                    if (record.path("seq").asLong() > afterSequence)
+                        consumer.accept(record);
+                }
+                line = next;
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last complete record. Bytes after it, such as a record cut short
+     * by a crash, are truncated away, so the next record starts on a line of its own.
+     */
+    private static long recover(Path file) {
+        if (!Files.exists(file))
+            return 0;
+
+        try (RandomAccessFile data = new RandomAccessFile(file.toFile(), "rw")) {
+            long length = data.length();
+            long sequence = 0;
+            // End of the line being collected, exclusive; its newline is there unless it is the file's end
+            long lineEnd = length;
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            // Read backwards until a line parses as a record
+            scan:
+            for (long position = length; position > 0; ) {
+                int chunk = (int) Math.min(4096, position);
+                position -= chunk;
+                byte[] buffer = new byte[chunk];
+                data.seek(position);
+                data.readFully(buffer);
+                for (int i = chunk - 1; i >= 0; i--) {
+                    if (buffer[i] != '\n') {
+                        line.write(buffer[i]);
+                        continue;
+                    }
+                    sequence = parseSequence(line);
+                    if (sequence > 0)
+                        break scan;
+                    line.reset();
+                    lineEnd = position + i;
+                }
+            }
+            if (sequence == 0)
+                sequence = parseSequence(line);
+
+            long keep = sequence > 0 ? lineEnd + 1 : 0;
+            if (keep < length) {
+                Log.warn("Truncating incomplete delta log records", "file", file, "bytes", length - keep);
+                data.setLength(keep);
+            } else if (keep > length) {
+                data.seek(length);
+                data.write('\n');
+            }
+            return sequence;
+        } catch (IOException e) {
+            Log.warn("Failed to read delta log, restarting sequence numbers", "file", file, "cause", e);
+            return 0;
+        }
+    }
+
+    /**
+     * @return the sequence number of the record on the reversed line, or 0 if it is not a complete record
+     */
+    private static long parseSequence(ByteArrayOutputStream reversedLine) {
+        byte[] bytes = reversedLine.toByteArray();
+        for (int i = 0, j = bytes.length - 1; i < j; i++, j--) {
+            byte swap = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = swap;
+        }
+        try {
+            return bytes.length == 0 ? 0 : objectMapper.readTree(bytes).path("seq").asLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
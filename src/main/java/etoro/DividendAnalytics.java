@@ -0,0 +1,210 @@
+package etoro;
+
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Portfolio-level rollups over a company snapshot: expected dividend income per week and month
+ * (one share held in every company), the yield distribution of each sector and the top companies
+ * by yield within each sector. Rollups run as a fork-join reduction and are cached per snapshot version.
+ */
+public class DividendAnalytics {
+
+    private static final int SPLIT_THRESHOLD = 2048;
+
+    public record RankedCompany(String fullName, double yield) {}
+
+    public record SectorStats(String sector, int companies, int priced, double minYield, double medianYield,
+                              double meanYield, double maxYield, List<RankedCompany> topByYield) {}
+
+    public record Report(long version, SortedMap<LocalDate, Double> weeklyIncome,
+                         SortedMap<YearMonth, Double> monthlyIncome, SortedMap<String, SectorStats> sectors) {
+
+        public void print(PrintStream out) {
+            out.println("Expected dividend income per month (one share each):");
+            monthlyIncome.forEach((month, income) -> out.printf("  %s  %12.2f%n", month, income));
+
+            out.println("\nExpected dividend income per week (one share each):");
+            weeklyIncome.forEach((week, income) -> out.printf("  week of %s  %12.2f%n", week, income));
+
+            out.println("\nDividend yield per sector:");
+            out.printf("  %-35s %8s %8s %8s %8s %8s%n", "Sector", "Count", "Min", "Median", "Mean", "Max");
+            for (SectorStats stats : sectors.values()) {
+                out.printf("  %-35s %8d %7.2f%% %7.2f%% %7.2f%% %7.2f%%%n", stats.sector(), stats.companies(),
+                        stats.minYield() * 100, stats.medianYield() * 100, stats.meanYield() * 100, stats.maxYield() * 100);
+                for (RankedCompany ranked : stats.topByYield())
+                    out.printf("      %-50s %7.2f%%%n", ranked.fullName(), ranked.yield() * 100);
+            }
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int topK;
+    private Report cachedReport;
+
+    public DividendAnalytics() {
+        this(ForkJoinPool.commonPool(), 5);
+    }
+
+    public DividendAnalytics(ForkJoinPool pool, int topK) {
+        this.pool = pool;
+        this.topK = topK;
+    }
+
+    /**
+     * Returns the rollups for the given snapshot, recomputing them only when {@code version}
+     * differs from the version of the cached report.
+     */
+    public synchronized Report analyse(Collection<Company> companies, long version) {
+        if (cachedReport != null && cachedReport.version() == version)
+            return cachedReport;
+
+        Company[] snapshot = companies.toArray(new Company[0]);
+        Partial partial = pool.invoke(new RollupTask(snapshot, 0, snapshot.length, topK));
+        cachedReport = partial.toReport(version);
+        return cachedReport;
+    }
+
+    private static long weekStart(long epochDay) {
+        // 1970-01-01 was a Thursday, so shifting by 3 makes Monday the first day of the week
+        return epochDay - Math.floorMod(epochDay + 3, 7);
+    }
+
+    private static class RollupTask extends RecursiveTask<Partial> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Company[] companies;
+        private final int from;
+        private final int to;
+        private final int topK;
+
+        RollupTask(Company[] companies, int from, int to, int topK) {
+            this.companies = companies;
+            this.from = from;
+            this.to = to;
+            this.topK = topK;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Partial partial = new Partial(topK);
+                for (int i = from; i < to; i++)
+                    partial.add(companies[i]);
+                return partial;
+            }
+
+            int middle = (from + to) >>> 1;
+            RollupTask left = new RollupTask(companies, from, middle, topK);
+            left.fork();
+            Partial right = new RollupTask(companies, middle, to, topK).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    private static class SectorPartial {
+
+        private final PriorityQueue<RankedCompany> top = new PriorityQueue<>(Comparator.comparingDouble(RankedCompany::yield));
+        private double[] yields = new double[16];
+        private int priced;
+        private int companies;
+        private double sum;
+
+        void add(Company company, int topK) {
+            companies++;
+            if (company.priceMicros <= 0)
+                return;
+
+            double yield = company.getDividendYield();
+            if (priced == yields.length)
+                yields = Arrays.copyOf(yields, priced * 2);
+            yields[priced++] = yield;
+            sum += yield;
+            offer(new RankedCompany(company.fullName, yield), topK);
+        }
+
+        void offer(RankedCompany ranked, int topK) {
+            if (top.size() < topK) {
+                top.add(ranked);
+            } else if (topK > 0 && top.peek().yield() < ranked.yield()) {
+                top.poll();
+                top.add(ranked);
+            }
+        }
+
+        SectorPartial merge(SectorPartial other, int topK) {
+            if (priced + other.priced > yields.length)
+                yields = Arrays.copyOf(yields, priced + other.priced);
+            System.arraycopy(other.yields, 0, yields, priced, other.priced);
+            priced += other.priced;
+            companies += other.companies;
+            sum += other.sum;
+            other.top.forEach(ranked -> offer(ranked, topK));
+            return this;
+        }
+
+        SectorStats toStats(String sector) {
+            List<RankedCompany> ranking = new ArrayList<>(top);
+            ranking.sort(Comparator.comparingDouble(RankedCompany::yield).reversed());
+            if (priced == 0)
+                return new SectorStats(sector, companies, 0, 0, 0, 0, 0, ranking);
+
+            double[] sorted = Arrays.copyOf(yields, priced);
+            Arrays.sort(sorted);
+            double median = priced % 2 == 1
+                    ? sorted[priced / 2]
+                    : (sorted[priced / 2 - 1] + sorted[priced / 2]) / 2;
+            return new SectorStats(sector, companies, priced, sorted[0], median, sum / priced, sorted[priced - 1], ranking);
+        }
+    }
+
+    private static class Partial {
+
+        // Summed in micros so the totals are exact
+        private final Map<Long, Long> weeklyIncome = new HashMap<>();
+        private final Map<YearMonth, Long> monthlyIncome = new HashMap<>();
+        private final Map<String, SectorPartial> sectors = new HashMap<>();
+        private final int topK;
+
+        Partial(int topK) {
+            this.topK = topK;
+        }
+
+        void add(Company company) {
+            for (DividendEvent event : company.dividendEvents) {
+                long paymentDay = event.dividendEpochDay();
+                weeklyIncome.merge(weekStart(paymentDay), event.dividendPerShareMicros(), Long::sum);
+                monthlyIncome.merge(YearMonth.from(LocalDate.ofEpochDay(paymentDay)), event.dividendPerShareMicros(), Long::sum);
+            }
+
+            String sector = company.sector == null || company.sector.isBlank() ? "Unknown" : company.sector;
+            sectors.computeIfAbsent(sector, s -> new SectorPartial()).add(company, topK);
+        }
+
+        Partial merge(Partial other) {
+            other.weeklyIncome.forEach((week, income) -> weeklyIncome.merge(week, income, Long::sum));
+            other.monthlyIncome.forEach((month, income) -> monthlyIncome.merge(month, income, Long::sum));
+            other.sectors.forEach((sector, stats) -> sectors.merge(sector, stats, (a, b) -> a.merge(b, topK)));
+            return this;
+        }
+
+        Report toReport(long version) {
+            SortedMap<LocalDate, Double> weeks = new TreeMap<>();
+            weeklyIncome.forEach((week, income) -> weeks.put(LocalDate.ofEpochDay(week), Money.toDouble(income)));
+            SortedMap<YearMonth, Double> months = new TreeMap<>();
+            monthlyIncome.forEach((month, income) -> months.put(month, Money.toDouble(income)));
+
+            SortedMap<String, SectorStats> sectorStats = new TreeMap<>();
+            sectors.forEach((sector, stats) -> sectorStats.put(sector, stats.toStats(sector)));
+
+            return new Report(version, Collections.unmodifiableSortedMap(weeks),
+                    Collections.unmodifiableSortedMap(months),
+                    Collections.unmodifiableSortedMap(sectorStats));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package etoro;
+
+import java.util.Comparator;
+
+/**
+ * One dividend of a company. A company can have several in the calendar, e.g. a regular and a special dividend.
+ *
+ * @param dividendPerShareMicros net dividend in millionths of a currency unit, see {@link Money}
+ */
+public record DividendEvent(long exDividendEpochDay, long dividendEpochDay, long dividendPerShareMicros) {
+
+    static final Comparator<DividendEvent> ORDER = Comparator.comparingLong(DividendEvent::exDividendEpochDay)
+            .thenComparingLong(DividendEvent::dividendEpochDay)
+            .thenComparingLong(DividendEvent::dividendPerShareMicros);
+
+    /**
+     * Whether both can describe the same dividend: same ex-dividend date, and payment date and dividend
+     * equal wherever both are known. 0 stands for unknown.
+     */
+    boolean matches(DividendEvent other) {
+        return exDividendEpochDay == other.exDividendEpochDay
+                && (dividendEpochDay == 0 || other.dividendEpochDay == 0 || dividendEpochDay == other.dividendEpochDay)
+                && (dividendPerShareMicros == 0 || other.dividendPerShareMicros == 0
+                    || dividendPerShareMicros == other.dividendPerShareMicros);
+    }
+
+    static DividendEvent of(Company company) {
+        return new DividendEvent(company.exDividendEpochDay, company.dividendEpochDay, company.dividendPerShareMicros);
+    }
+}
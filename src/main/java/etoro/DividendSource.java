@@ -0,0 +1,62 @@
+package etoro;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A provider of dividend calendar rows and per-company market details.
+ * Calendar rows are returned without price and market cap, which are fetched
+ * separately through {@link #fetchDetails(Company)}.
+ */
+public interface DividendSource {
+
+    String getName();
+
+    List<Company> fetchCalendar() throws IOException;
+
+    CompanyDetails fetchDetails(Company company) throws IOException;
+
+    /**
+     * The moment the data returned by this source was current.
+     */
+    default Instant getDataTimestamp() {
+        return Instant.now();
+    }
+
+    /**
+     * How long this source's data stays authoritative when merging with other sources.
+     */
+    default Duration getFreshness() {
+        return Duration.ofHours(12);
+    }
+
+    /**
+     * How many detail fetches may run against this source at once.
+     */
+    default int getParallelism() {
+        return 10;
+    }
+
+    /**
+     * Builds the sources listed in the {@code dividend.sources} system property, e.g.
+     * {@code etoro,file:fixtures/companies.json}. Defaults to eToro only.
+     * The eToro base URL can be redirected with {@code etoro.url}, e.g. to a local stand-in server.
+     */
+    static List<DividendSource> configured() {
+        List<DividendSource> sources = new ArrayList<>();
+        for (String source : System.getProperty("dividend.sources", "etoro").split(",")) {
+            source = source.strip();
+            if (source.equals("etoro"))
+                sources.add(new EtoroSource(System.getProperty("etoro.url", "https://www.etoro.com")));
+            else if (source.startsWith("file:"))
+                sources.add(new FileDividendSource(Path.of(source.substring("file:".length()))));
+            else if (!source.isEmpty())
+                throw new IllegalArgumentException("Unknown dividend source: " + source);
+        }
+        return sources;
+    }
+}
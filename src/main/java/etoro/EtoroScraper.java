@@ -2,16 +2,15 @@ package etoro;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.*;
-import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -21,246 +20,368 @@ import static java.lang.Math.max;
 
 public class EtoroScraper
 {
-    private final String fullUrl = "https://www.etoro.com";
-    private final String url = "https://www.etoro.com/investing/dividend-calendar/";
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new CompanyModule());
+    private final File companiesFile = new File(System.getProperty("dividend.companiesFile", "companies.json"));
+    private final long crawlTimeoutSeconds = Long.getLong("dividend.crawlTimeoutSeconds", 60);
     public Map<String,Company> companies = new LinkedHashMap<>();
-    private ProgressTracker progressTracker;
+    private volatile ProgressTracker progressTracker;
+    private final List<RefreshListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<DividendSource> sources;
+    private final SourceMerger merger;
+    private final Map<String, CompletableFuture<CompanyDetails>> inFlightFetches = new ConcurrentHashMap<>();
+
+    /**
+     * Uses the configured sources and, unless {@code -Ddelta.log=off}, appends each refresh's changes
+     * to the delta log (companies.delta.ndjson by default).
+     */
+    public EtoroScraper()
+    {
+        this(DividendSource.configured(), SourceMerger.configured());
+        String deltaLog = System.getProperty("delta.log", "companies.delta.ndjson");
+        if (!deltaLog.equals("off"))
+            addRefreshListener(new DeltaLog(Path.of(deltaLog)));
+    }
 
+    public EtoroScraper(List<DividendSource> sources, SourceMerger merger)
+    {
+        this.sources = sources;
+        this.merger = merger;
+    }
 
-    private void fetchCompanyDetails(String href, String companyName)
+    public void addRefreshListener(RefreshListener listener)
     {
-        String link = fullUrl + href;
-        Document marketPage;
+        listeners.add(listener);
+    }
 
-        try {
-            marketPage = Jsoup.connect(link).timeout(10000).get();
-            float price = fetchCompanyPrice(marketPage);
+    public ProgressTracker getProgressTracker()
+    {
+        return progressTracker;
+    }
 
-            BigDecimal marketCap = fetchCompanyMarketCap(marketPage);
-            updateCompanyDetails(companyName,price, marketCap);
+    private void fetchCompanyDetails(DividendSource source, Company company)
+    {
+        long start = System.nanoTime();
+        try {
+            CompanyDetails details = fetchSingleFlight(source, company);
+            updateCompanyDetails(company, details.priceMicros(), details.marketCap());
         }catch (IOException e)
         {
-            System.out.println("Couldn't connect to " + link);
-            updateCompanyDetails(companyName,0, BigDecimal.ZERO);
+            Log.warn("Couldn't connect to market page", "source", source.getName(), "href", company.marketHref,
+                    "cause", e, "latencyMs", (System.nanoTime() - start) / 1_000_000);
+            // New rows stay unpriced, re-fetched rows keep their last known details
+            updateCompanyDetails(company, company.priceMicros, company.marketCap);
         }
         catch (Exception e)
         {
-            System.out.println("Failed to fetch "+ companyName +" details!");
-            updateCompanyDetails(companyName,0, BigDecimal.ZERO);
-            System.out.println(e.getMessage());
+            Log.warn("Failed to fetch company details", "source", source.getName(), "href", company.marketHref,
+                    "cause", e, "latencyMs", (System.nanoTime() - start) / 1_000_000);
+            updateCompanyDetails(company, company.priceMicros, company.marketCap);
         }
     }
 
-    private float fetchCompanyPrice(Document marketPage)
-    {
-        String rawPrice = marketPage.select("span[data-automation-id=AssetShortInfoPrice]").text().replace(",", "");
-        return Float.parseFloat(rawPrice);
-    }
-
-    private Elements fetchCompanyStats(Document marketPage)
-    {
-        Element statsAnchor = marketPage.getElementById("stats");
-        Element container = statsAnchor.parent();
-        Elements rows = container.getElementsByClass("Table_row___1rR3");
-        return rows;
-    }
-
-    private BigDecimal fetchCompanyMarketCap(Document marketPage)
+    /**
+     * Fetches the market page of {@code company}, or waits for the fetch of the same page that is
+     * already in flight, e.g. for another row with the same href or from an overlapping refresh.
+     */
+    private CompanyDetails fetchSingleFlight(DividendSource source, Company company) throws Exception
     {
-        Elements rows = fetchCompanyStats(marketPage);
-        try{
-            for (Element row : rows)
-            {
-                Element label = row.selectFirst("div.ets-plain-text");
-                if(label != null && label.text().equalsIgnoreCase("Market Cap")) {
-                    Element value = row.selectFirst("div.ets-number");
-                    if(value != null) {
-                        return Company.parseMarketCap(value.text());
-                    }
-                }
+        String key = source.getName() + ' ' + company.marketHref;
+        CompletableFuture<CompanyDetails> fetch = new CompletableFuture<>();
+        CompletableFuture<CompanyDetails> inFlight = inFlightFetches.putIfAbsent(key, fetch);
+        if (inFlight != null) {
+            Log.debug("Joining in-flight fetch", "href", company.marketHref);
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Exception cause)
+                    throw cause;
+                throw e;
             }
         }
-        catch (Exception ignored){}
-        return BigDecimal.ZERO;
+
+        try {
+            CompanyDetails details = source.fetchDetails(company);
+            fetch.complete(details);
+            return details;
+        } catch (Exception e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightFetches.remove(key, fetch);
+        }
     }
 
-    private synchronized void updateCompanyDetails(String companyName, float price, BigDecimal marketCap)
+    private synchronized void updateCompanyDetails(Company company, long priceMicros, long marketCap)
     {
-        Company company = companies.get(companyName);
-        company.price = price;
+        company.priceMicros = priceMicros;
         company.marketCap = marketCap;
         progressTracker.incrementCompaniesProcessed();
+        notifyUpdated(company);
     }
 
-    private List<Element> getDividendCalendar()
+    private void notifyUpdated(Company company)
     {
-        Document doc;
+        // A copy per listener: the client applies user tags to the rows it receives, which others must not see
+        for (RefreshListener listener : listeners)
+            listener.companyUpdated(new Company(company));
+    }
+
+    /**
+     * Fetches the calendars of all sources concurrently and merges them into one row per company.
+     */
+    private List<SourceMerger.MergedRow> getDividendCalendar()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(max(1, sources.size()));
+        List<CompletableFuture<SourceMerger.SourceResult>> calendars = new ArrayList<>();
+        for (DividendSource source : sources) {
+            calendars.add(CompletableFuture.supplyAsync(() -> {
+                PipelineEvents.CalendarFetch event = new PipelineEvents.CalendarFetch();
+                event.source = source.getName();
+                event.begin();
+                try {
+                    List<Company> rows = source.fetchCalendar();
+                    event.rows = rows.size();
+                    event.outcome = PipelineEvents.OK;
+                    return new SourceMerger.SourceResult(source, rows, source.getDataTimestamp());
+                } catch (IOException e) {
+                    event.outcome = PipelineEvents.outcome(e);
+                    Log.warn("Couldn't fetch dividend calendar", "source", source.getName(), "cause", e);
+                    return null;
+                } catch (RuntimeException e) {
+                    event.outcome = PipelineEvents.outcome(e);
+                    throw e;
+                } finally {
+                    event.commit();
+                }
+            }, executor));
+        }
+
+        List<SourceMerger.SourceResult> results = new ArrayList<>();
+        int rows = 0;
+        PipelineMetrics.Stage calendarStage = PipelineMetrics.stage("calendar", sources.size());
         try {
-            doc = Jsoup.connect(url).maxBodySize(0).get();
-        }catch (IOException e)
-        {
-            System.out.println("Couldn't connect to " + url);
-            return new ArrayList<>();
+            for (CompletableFuture<SourceMerger.SourceResult> calendar : calendars) {
+                SourceMerger.SourceResult result = calendar.join();
+                if (result != null) {
+                    results.add(result);
+                    rows += result.rows().size();
+                }
+            }
+        } finally {
+            calendarStage.close();
         }
+        executor.shutdown();
 
-        return doc.select("tbody.ec-reports-container tr");
+        PipelineMetrics.Stage mergeStage = PipelineMetrics.stage("merge", rows);
+        try {
+            return merger.merge(results);
+        } finally {
+            mergeStage.close();
+        }
     }
 
-    private Company extractCompany(Element tableRow)
+    /**
+     * Adds calendar rows that are missing or unpriced and fetches their details; rows already priced only
+     * take the calendar's dividend events, unless a listener asks for their details again. Every source
+     * gets its own pool, so a slow source does not hold back the others.
+     */
+    private void crawl(List<SourceMerger.MergedRow> calendar)
     {
-        Elements tds = tableRow.select("td");
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("crawl", calendar.size());
         try {
-            String name = tds.get(0).select("span.ec-company__name").text();
-            String fullName = tds.get(0).attr("data-company-name");
-            String sector = tds.get(1).attr("data-sector-name");
-            Date exDividend = Date.from(LocalDate.parse(tds.get(2).attr("data-exdividend-date")).atStartOfDay(ZoneId.systemDefault()).toInstant());
-            Date dividend = Date.from(LocalDate.parse(tds.get(3).attr("data-payment-date")).atStartOfDay(ZoneId.systemDefault()).toInstant());
-            String marketHref = tds.get(0).select("a").attr("href");
-            float dividendPerShare = Float.parseFloat(tds.get(5).attr("data-net-dividend"));
-
-            return new Company.Builder(name, fullName)
-                    .sector(sector)
-                    .exDividendDate(exDividend)
-                    .dividendDate(dividend)
-                    .marketHref(marketHref)
-                    .dividendPerShare(dividendPerShare)
-                    .addTag("NEW")
-                    .build();
-        }
-        catch (Exception e)
-        {
-            System.out.println("Couldn't extract company!");
-            return null;
+            crawlDetails(calendar);
+        } finally {
+            stage.close();
         }
     }
 
-
-
-    private void extractCompanies()
+    private void crawlDetails(List<SourceMerger.MergedRow> calendar)
     {
-        if (!companies.isEmpty())
-            return;
-
-        List<Element> tableRows = getDividendCalendar();
-
-        int companiesCount = tableRows.size();
-        progressTracker = new ProgressTracker(companiesCount);
-
-        System.out.println("Extracting companies...");
-        ExecutorService executor = Executors.newFixedThreadPool(10);
-        for (int currentCompany=0; currentCompany<companiesCount; currentCompany++)
-        {
-            Element row = tableRows.get(currentCompany);
-            try {
-                Company company = extractCompany(row);
-                if (company != null) {
-                    companies.put(company.fullName, company);
-                    executor.submit(() -> fetchCompanyDetails(company.marketHref, company.fullName));
+        progressTracker = new ProgressTracker(calendar.size());
+        Map<DividendSource, ExecutorService> executors = new HashMap<>();
+        long today = LocalDate.now().toEpochDay();
+
+        for (SourceMerger.MergedRow row : calendar) {
+            Company calendarCompany = row.company();
+            Company existingCompany = companies.get(calendarCompany.fullName);
+            if (existingCompany != null && existingCompany.priceMicros != 0) {
+                boolean refetch = listeners.stream().anyMatch(listener -> listener.needsDetails(existingCompany));
+                synchronized (this) {
+                    boolean eventsChanged = existingCompany.mergeDividendEvents(calendarCompany.dividendEvents, today);
+                    boolean changed = existingCompany.tags.remove("NEW") | eventsChanged;
+                    if (refetch) {
+                        // The detail source belongs to the calendar row's link; listeners hear once the price is in
+                        existingCompany.marketHref = calendarCompany.marketHref;
+                    } else {
+                        if (changed)
+                            notifyUpdated(existingCompany);
+                        progressTracker.incrementCompaniesProcessed();
+                    }
+                }
+                if (refetch) {
+                    DividendSource source = row.detailSource();
+                    executors.computeIfAbsent(source, s -> Executors.newFixedThreadPool(s.getParallelism()))
+                            .submit(() -> fetchCompanyDetails(source, existingCompany));
                 }
+                continue;
             }
-            catch (Exception ignored)
-            {}
+
+            Log.debug("Adding company", "company", calendarCompany.fullName, "href", calendarCompany.marketHref);
+            if (existingCompany != null)
+                calendarCompany.mergeDividendEvents(existingCompany.dividendEvents, today);
+            companies.put(calendarCompany.fullName, calendarCompany);
+            DividendSource source = row.detailSource();
+            executors.computeIfAbsent(source, s -> Executors.newFixedThreadPool(s.getParallelism()))
+                    .submit(() -> fetchCompanyDetails(source, calendarCompany));
         }
-        executor.shutdown();
 
+        executors.values().forEach(ExecutorService::shutdown);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(crawlTimeoutSeconds);
         try {
-            executor.awaitTermination(60, TimeUnit.SECONDS);
+            for (ExecutorService executor : executors.values()) {
+                if (!executor.awaitTermination(max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                    Log.warn("Could not fetch all prices in time!");
+            }
         } catch (InterruptedException e) {
-            executor.shutdownNow();
+            executors.values().forEach(ExecutorService::shutdownNow);
             Thread.currentThread().interrupt();
-            System.out.println("Could not fetch all prices in time!");
+            Log.warn("Could not fetch all prices in time!");
         }
+    }
+
+    private void extractCompanies()
+    {
+        if (!companies.isEmpty())
+            return;
+
+        Log.info("Extracting companies...");
+        listeners.forEach(listener -> listener.refreshStarted(Collections.unmodifiableMap(companies)));
+        crawl(getDividendCalendar());
 
-        System.out.println("Extraction completed.");
+        Log.info("Extraction completed.");
         saveCompaniesToFile();
+        listeners.forEach(RefreshListener::refreshFinished);
     }
 
     private void removeOutdatedCompanies()
     {
-        System.out.println("Removing outdated companies...");
-        Date currentDate = new Date(System.currentTimeMillis());
+        Log.info("Removing outdated companies...");
+        long today = LocalDate.now().toEpochDay();
         Iterator<Map.Entry<String, Company>> iterator = companies.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, Company> entry = iterator.next();
-            if (entry.getValue().dividendDate.before(currentDate)) {
+            Company company = entry.getValue();
+            boolean changed = company.removePastEvents(today);
+            if (company.dividendEpochDay < today) {
                 iterator.remove();
+                listeners.forEach(listener -> listener.companyRemoved(entry.getKey()));
+            } else if (changed) {
+                notifyUpdated(company);
             }
         }
-        System.out.println("Removed outdated companies.");
+        Log.info("Removed outdated companies.");
     }
 
     private void updateCompanies()
     {
-        System.out.println("Updating companies...");
-        List<Element> tableRows = getDividendCalendar();
-        int companiesCount = tableRows.size();
+        Log.info("Updating companies...");
+        listeners.forEach(listener -> listener.refreshStarted(Collections.unmodifiableMap(companies)));
+        List<SourceMerger.MergedRow> calendar = getDividendCalendar();
         removeOutdatedCompanies();
+        crawl(calendar);
 
-        progressTracker = new ProgressTracker(companiesCount);
-        ExecutorService executor = Executors.newFixedThreadPool(10);
-        for (int currentCompany=0; currentCompany<companiesCount; currentCompany++) {
-            Element row = tableRows.get(currentCompany);
-            String companyName = row.select("td[data-company-name]").attr("data-company-name");
-
-            if (companies.containsKey(companyName) && companies.get(companyName).price != 0f) {
-                companies.get(companyName).tags.remove("NEW");
-                progressTracker.incrementCompaniesProcessed();
-                continue;
-            }
-
-            System.out.println("Adding " + companyName + " to companies...");
-            Company extractedCompany = extractCompany(row);
-            if (extractedCompany != null) {
-                companies.put(extractedCompany.fullName, extractedCompany);
-                executor.submit(() -> fetchCompanyDetails(extractedCompany.marketHref, extractedCompany.fullName));
-            }
-        }
-
-        executor.shutdown();
-
-        try {
-            executor.awaitTermination(60, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
-            System.out.println("Could not fetch all prices in time!");
-        }
-
-        System.out.println("Update completed.");
+        Log.info("Update completed.");
         saveCompaniesToFile();
+        listeners.forEach(RefreshListener::refreshFinished);
     }
 
 
     private void saveCompaniesToFile()
     {
-        System.out.println("Saving companies to file...");
-        ObjectMapper objectMapper = new ObjectMapper();
+        Log.info("Saving companies to file...");
+        PipelineEvents.CompaniesSave event = new PipelineEvents.CompaniesSave();
+        event.file = companiesFile.getPath();
+        event.companies = companies.size();
+        event.begin();
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("save", companies.size());
         try {
-            objectMapper.writeValue(new File("companies.json"), companies);
-            System.out.println("Companies successfully saved.");
+            objectMapper.writeValue(companiesFile, companies);
+            if (event.shouldCommit())
+                event.bytes = companiesFile.length();
+            event.outcome = PipelineEvents.OK;
+            Log.info("Companies successfully saved.");
         }
         catch(Exception e)
         {
-            System.out.println("Failed to save companies to file!");
+            event.outcome = PipelineEvents.outcome(e);
+            Log.error("Failed to save companies to file!", "file", companiesFile, "cause", e);
+        }
+        finally
+        {
+            stage.close();
+            event.commit();
         }
     }
 
-    public void loadCompanies()
+    public boolean loadCachedCompanies()
     {
-        System.out.println("Loading companies...");
-        ObjectMapper objectMapper = new ObjectMapper();
+        Log.info("Loading companies...");
+        PipelineEvents.CompaniesLoad event = new PipelineEvents.CompaniesLoad();
+        event.file = companiesFile.getPath();
+        if (event.isEnabled())
+            event.bytes = companiesFile.length();
+        event.begin();
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("load", 0);
         try {
             TypeReference<Map<String, Company>> typeRef = new TypeReference<>() {};
-            this.companies = objectMapper.readValue(new File("companies.json"), typeRef);
-            System.out.println("Companies successfully loaded.");
-            updateCompanies();
+            this.companies = objectMapper.readValue(companiesFile, typeRef);
+            event.companies = companies.size();
+            event.outcome = PipelineEvents.OK;
+            Log.info("Companies successfully loaded.", "count", companies.size());
+            return true;
         }
         catch(Exception e)
         {
-            System.out.println("Failed to load companies from file!");
-            extractCompanies();
+            event.outcome = PipelineEvents.outcome(e);
+            Log.warn("Failed to load companies from file!", "file", companiesFile, "cause", e);
+            return false;
+        }
+        finally
+        {
+            stage.close();
+            event.commit();
         }
     }
 
+    public void loadCompanies()
+    {
+        if (loadCachedCompanies())
+            updateCompanies();
+        else
+            extractCompanies();
+    }
+
+    /**
+     * Runs {@link #updateCompanies()} on a background thread.
+     * Refreshed rows are reported to the registered {@link RefreshListener}s as they arrive.
+     */
+    public CompletableFuture<Void> refreshCompaniesAsync()
+    {
+        CompletableFuture<Void> refresh = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                updateCompanies();
+                refresh.complete(null);
+            } catch (Exception e) {
+                Log.error("Background refresh failed", "cause", e);
+                refresh.completeExceptionally(e);
+            }
+        }, "companies-refresh");
+        worker.setDaemon(true);
+        worker.start();
+        return refresh;
+    }
+
 
 }
\ No newline at end of file
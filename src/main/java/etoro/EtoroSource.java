@@ -0,0 +1,142 @@
+package etoro;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class EtoroSource implements DividendSource
+{
+    private final String fullUrl;
+    private final String url;
+
+    public EtoroSource(String fullUrl)
+    {
+        this.fullUrl = fullUrl;
+        this.url = fullUrl + "/investing/dividend-calendar/";
+    }
+
+    @Override
+    public String getName()
+    {
+        return "etoro";
+    }
+
+    @Override
+    public List<Company> fetchCalendar() throws IOException
+    {
+        Document doc = Jsoup.connect(url).maxBodySize(0).get();
+        List<Company> companies = new ArrayList<>();
+        for (Element row : doc.select("tbody.ec-reports-container tr"))
+        {
+            Company company = extractCompany(row);
+            if (company != null)
+                companies.add(company);
+        }
+        return companies;
+    }
+
+    @Override
+    public CompanyDetails fetchDetails(Company company) throws IOException
+    {
+        PipelineEvents.MarketPageFetch fetch = new PipelineEvents.MarketPageFetch();
+        PipelineEvents.MarketPageParse parse = new PipelineEvents.MarketPageParse();
+        // Counting the bytes buffers the body, so only when an event can record them
+        boolean countBytes = fetch.isEnabled() || parse.isEnabled();
+        fetch.href = company.marketHref;
+        fetch.begin();
+        Connection.Response response;
+        try {
+            response = Jsoup.connect(fullUrl + company.marketHref).timeout(10000).execute();
+            if (countBytes)
+                fetch.bytes = response.bodyAsBytes().length;
+            fetch.outcome = PipelineEvents.OK;
+        } catch (IOException | RuntimeException e) {
+            fetch.outcome = PipelineEvents.outcome(e);
+            throw e;
+        } finally {
+            fetch.commit();
+        }
+
+        parse.href = company.marketHref;
+        parse.bytes = fetch.bytes;
+        parse.begin();
+        try {
+            Document marketPage = response.parse();
+            CompanyDetails details = new CompanyDetails(fetchCompanyPrice(marketPage), fetchCompanyMarketCap(marketPage));
+            parse.outcome = PipelineEvents.OK;
+            return details;
+        } catch (IOException | RuntimeException e) {
+            parse.outcome = PipelineEvents.outcome(e);
+            throw e;
+        } finally {
+            parse.commit();
+        }
+    }
+
+    private long fetchCompanyPrice(Document marketPage)
+    {
+        return NumberParser.parseMicros(marketPage.select("span[data-automation-id=AssetShortInfoPrice]").text());
+    }
+
+    private Elements fetchCompanyStats(Document marketPage)
+    {
+        Element statsAnchor = marketPage.getElementById("stats");
+        Element container = statsAnchor.parent();
+        Elements rows = container.getElementsByClass("Table_row___1rR3");
+        return rows;
+    }
+
+    private long fetchCompanyMarketCap(Document marketPage)
+    {
+        Elements rows = fetchCompanyStats(marketPage);
+        try{
+            for (Element row : rows)
+            {
+                Element label = row.selectFirst("div.ets-plain-text");
+                if(label != null && label.text().equalsIgnoreCase("Market Cap")) {
+                    Element value = row.selectFirst("div.ets-number");
+                    if(value != null) {
+                        return Company.parseMarketCap(value.text());
+                    }
+                }
+            }
+        }
+        catch (Exception ignored){}
+        return 0;
+    }
+
+    private Company extractCompany(Element tableRow)
+    {
+        Elements tds = tableRow.select("td");
+        try {
+            String name = tds.get(0).select("span.ec-company__name").text();
+            String fullName = tds.get(0).attr("data-company-name");
+            String sector = tds.get(1).attr("data-sector-name");
+            LocalDate exDividend = LocalDate.parse(tds.get(2).attr("data-exdividend-date"));
+            LocalDate dividend = LocalDate.parse(tds.get(3).attr("data-payment-date"));
+            String marketHref = tds.get(0).select("a").attr("href");
+            long dividendPerShareMicros = NumberParser.parseMicros(tds.get(5).attr("data-net-dividend"));
+
+            return new Company.Builder(name, fullName)
+                    .sector(sector)
+                    .exDividendDate(exDividend)
+                    .dividendDate(dividend)
+                    .marketHref(marketHref)
+                    .dividendPerShareMicros(dividendPerShareMicros)
+                    .addTag("NEW")
+                    .build();
+        }
+        catch (Exception e)
+        {
+            Log.warn("Couldn't extract company", "href", tableRow.select("a").attr("href"), "cause", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package etoro;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves calendar rows and details from a file in the companies.json format,
+ * for fixtures and offline runs. The file's modification time is reported as the data timestamp.
+ */
+public class FileDividendSource implements DividendSource {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new CompanyModule());
+
+    private final Path file;
+    private final Map<String, CompanyDetails> detailsByHref = new HashMap<>();
+
+    public FileDividendSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return "file:" + file;
+    }
+
+    @Override
+    public synchronized List<Company> fetchCalendar() throws IOException {
+        TypeReference<Map<String, Company>> typeRef = new TypeReference<>() {};
+        Map<String, Company> fixture = objectMapper.readValue(file.toFile(), typeRef);
+
+        detailsByHref.clear();
+        List<Company> calendar = new ArrayList<>();
+        for (Company company : fixture.values()) {
+            detailsByHref.put(company.marketHref, new CompanyDetails(company.priceMicros, company.marketCap));
+            Company row = new Company(company);
+            row.priceMicros = 0;
+            row.marketCap = 0;
+            row.tags.add("NEW");
+            calendar.add(row);
+        }
+        return calendar;
+    }
+
+    @Override
+    public synchronized CompanyDetails fetchDetails(Company company) throws IOException {
+        CompanyDetails details = detailsByHref.get(company.marketHref);
+        if (details == null)
+            throw new IOException("No details for " + company.marketHref + " in " + file);
+        return details;
+    }
+
+    @Override
+    public Instant getDataTimestamp() {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return Instant.EPOCH;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package etoro;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled logger whose callers never block on output.
+ * <p>
+ * Messages go into a fixed-size lock-free ring buffer (a bounded multi-producer queue in the style of
+ * Vyukov's) and are formatted and written by a single background thread. When the buffer is full the
+ * message is dropped and counted instead of waiting. The writer also suppresses bursts of the same
+ * message: after {@value #REPEAT_LIMIT} occurrences within {@value #REPEAT_WINDOW_SECONDS} seconds,
+ * further ones are only counted and summarised when the window closes.
+ * <p>
+ * Fields are passed as alternating names and values, e.g. {@code Log.warn("Fetch failed", "href", href, "cause", e)}.
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final int REPEAT_LIMIT = 5;
+    private static final int REPEAT_WINDOW_SECONDS = 5;
+    private static final long REPEAT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(REPEAT_WINDOW_SECONDS);
+
+    private static final class Slot {
+        volatile long sequence;
+        long timestamp;
+        Level level;
+        String thread;
+        String message;
+        Object[] fields;
+    }
+
+    private static final Slot[] ring = new Slot[CAPACITY];
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long head = 0;
+    private static volatile PrintStream out = System.out;
+    private static final Level minimumLevel = Level.valueOf(System.getProperty("log.level", "INFO").toUpperCase());
+
+    private static final class RepeatWindow {
+        final long start;
+        final Level level;
+        final String message;
+        int count;
+        long suppressed;
+
+        RepeatWindow(long start, Level level, String message) {
+            this.start = start;
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    // Writer thread state
+    private static final Map<String, RepeatWindow> repeatWindows = new HashMap<>();
+    private static final Thread writer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Slot();
+            ring[i].sequence = i;
+        }
+        writer = new Thread(Log::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(TimeUnit.SECONDS.toNanos(2)), "log-flush"));
+    }
+
+    private Log() {}
+
+    public static void debug(String message, Object... fields) {
+        log(Level.DEBUG, message, fields);
+    }
+
+    public static void info(String message, Object... fields) {
+        log(Level.INFO, message, fields);
+    }
+
+    public static void warn(String message, Object... fields) {
+        log(Level.WARN, message, fields);
+    }
+
+    public static void error(String message, Object... fields) {
+        log(Level.ERROR, message, fields);
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(minimumLevel) >= 0;
+    }
+
+    public static void log(Level level, String message, Object... fields) {
+        if (!isEnabled(level))
+            return;
+
+        while (true) {
+            long position = tail.get();
+            Slot slot = ring[(int) (position & MASK)];
+            long difference = slot.sequence - position;
+            if (difference < 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (difference == 0 && tail.compareAndSet(position, position + 1)) {
+                slot.timestamp = System.currentTimeMillis();
+                slot.level = level;
+                slot.thread = Thread.currentThread().getName();
+                slot.message = message;
+                slot.fields = fields;
+                slot.sequence = position + 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until everything logged so far has been written, then sends further output to {@code stream}.
+     */
+    public static void setOutput(PrintStream stream) {
+        flush();
+        out = stream;
+    }
+
+    public static void setOutput(Path file) {
+        try {
+            setOutput(new PrintStream(new FileOutputStream(file.toFile(), true), true));
+        } catch (IOException e) {
+            warn("Couldn't open log file, logging to console", "file", file, "cause", e);
+        }
+    }
+
+    /**
+     * Blocks until everything logged before the call has been written. Not for use on hot paths.
+     */
+    public static void flush() {
+        flush(TimeUnit.SECONDS.toNanos(5));
+    }
+
+    private static void flush(long timeoutNanos) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (head < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+        out.flush();
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            boolean wrote = false;
+            Slot slot;
+            while ((slot = ring[(int) (head & MASK)]).sequence == head + 1) {
+                write(slot.timestamp, slot.level, slot.thread, slot.message, slot.fields);
+                slot.message = null;
+                slot.fields = null;
+                slot.sequence = head + CAPACITY;
+                head = head + 1;
+                wrote = true;
+            }
+
+            long droppedMessages = dropped.getAndSet(0);
+            if (droppedMessages > 0)
+                out.println(Instant.now() + " WARN  [log-writer] Log buffer full, dropped messages count=" + droppedMessages);
+            closeExpiredWindows(System.nanoTime());
+
+            if (!wrote)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+        }
+    }
+
+    private static void write(long timestamp, Level level, String thread, String message, Object[] fields) {
+        String key = level + message;
+        long now = System.nanoTime();
+        RepeatWindow window = repeatWindows.get(key);
+        if (window == null || now - window.start > REPEAT_WINDOW_NANOS) {
+            if (window != null)
+                summariseSuppressed(window);
+            window = new RepeatWindow(now, level, message);
+            repeatWindows.put(key, window);
+        }
+        if (++window.count > REPEAT_LIMIT) {
+            window.suppressed++;
+            return;
+        }
+
+        StringBuilder line = new StringBuilder(96);
+        line.append(Instant.ofEpochMilli(timestamp)).append(' ')
+                .append(String.format("%-5s", level)).append(" [").append(thread).append("] ")
+                .append(message);
+        if (fields != null) {
+            for (int i = 0; i + 1 < fields.length; i += 2)
+                line.append(' ').append(fields[i]).append('=').append(fields[i + 1]);
+        }
+        out.println(line);
+    }
+
+    private static void closeExpiredWindows(long now) {
+        Iterator<RepeatWindow> iterator = repeatWindows.values().iterator();
+        while (iterator.hasNext()) {
+            RepeatWindow window = iterator.next();
+            if (now - window.start > REPEAT_WINDOW_NANOS) {
+                summariseSuppressed(window);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void summariseSuppressed(RepeatWindow window) {
+        if (window.suppressed == 0)
+            return;
+        out.println(Instant.now() + " " + String.format("%-5s", window.level) + " [log-writer] Suppressed repeats of \""
+                + window.message + "\" count=" + window.suppressed);
+    }
+}
@@ -1,8 +1,40 @@
 package etoro;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
 public class Main {
     public static void main(String[] args){
+        if (args.length > 0 && args[0].startsWith("--report")) {
+            printReport(args[0].equals("--report=json"));
+            return;
+        }
+
         Client client = new Client();
         client.startClient();
     }
-}
\ No newline at end of file
+
+    private static void printReport(boolean json) {
+        if (json)
+            Log.setOutput(System.err);
+        EtoroScraper server = new EtoroScraper();
+        WatchRules watchRules = WatchRules.configured(json ? "file:alerts.log" : "stdout");
+        if (watchRules != null)
+            server.addRefreshListener(watchRules);
+        server.loadCompanies();
+        DividendAnalytics.Report report = new DividendAnalytics().analyse(server.companies.values(), 0);
+        Log.flush();
+
+        if (!json) {
+            report.print(System.out);
+            return;
+        }
+
+        try {
+            ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            System.out.println(mapper.writeValueAsString(report));
+        } catch (Exception e) {
+            System.out.println("Failed to write report!");
+        }
+    }
+}
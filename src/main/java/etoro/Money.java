@@ -0,0 +1,39 @@
+package etoro;
+
+/**
+ * Fixed-point helpers for prices and dividends, which are stored as {@code long} millionths of a currency unit.
+ */
+public final class Money {
+
+    public static final int SCALE = 6;
+    public static final long ONE = 1_000_000L;
+
+    private Money() {}
+
+    public static double toDouble(long micros) {
+        return micros / (double) ONE;
+    }
+
+    /**
+     * Plain decimal representation without trailing zeros, e.g. {@code 12.5} or {@code 0.000125}.
+     */
+    public static String format(long micros) {
+        StringBuilder text = new StringBuilder(24);
+        if (micros < 0) {
+            text.append('-');
+            if (micros == Long.MIN_VALUE)
+                return text.append("9223372036854.775808").toString();
+            micros = -micros;
+        }
+        text.append(micros / ONE);
+        long fraction = micros % ONE;
+        if (fraction != 0) {
+            text.append('.');
+            for (long digit = ONE / 10; fraction != 0; digit /= 10) {
+                text.append((char) ('0' + fraction / digit));
+                fraction %= digit;
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package etoro;
+
+/**
+ * Parses numbers as they appear on scraped pages straight into scaled {@code long}s, without allocating.
+ * <p>
+ * Accepts surrounding whitespace, a leading sign, currency symbols and codes before or after the number
+ * ({@code $}, {@code US$}, {@code USD} ...), grouping commas, spaces and apostrophes, a decimal point,
+ * an exponent ({@code 1.2E+12}, as written by {@link java.math.BigDecimal#toString()}) and a
+ * K/M/B/T magnitude suffix. Other words, such as {@code Bn} or {@code mln}, are rejected rather than
+ * skipped, since the magnitude they stand for would be lost. Digits beyond the requested scale are
+ * rounded half up.
+ */
+public final class NumberParser {
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    private static final String[] CURRENCY_CODES = {"USD", "EUR", "GBP", "GBX", "CHF", "JPY", "HKD", "CNY", "SEK",
+            "NOK", "DKK", "PLN", "CZK", "HUF", "CAD", "AUD", "NZD", "SGD", "ILS", "ZAR", "AED", "SAR"};
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private NumberParser() {}
+
+    public static long parseMicros(CharSequence text) {
+        return parseScaled(text, 0, text.length(), Money.SCALE);
+    }
+
+    public static long parseWhole(CharSequence text) {
+        return parseScaled(text, 0, text.length(), 0);
+    }
+
+    /**
+     * Returns the number in {@code text[start, end)} multiplied by {@code 10^scale}.
+     *
+     * @throws NumberFormatException when there are no digits, the text has unexpected characters
+     *                               between the digits, or the result does not fit in a long
+     */
+    public static long parseScaled(CharSequence text, int start, int end, int scale) {
+        int i = start;
+        boolean negative = false;
+
+        // Prefix: whitespace, sign and currency symbols or codes
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '-' || c == '\u2212')
+                negative = true;
+            else if (isDigit(c) || c == '.')
+                break;
+            else if (Character.isLetter(c)) {
+                int wordEnd = wordEnd(text, i, end);
+                // A code, or letters that qualify the symbol after them as in US$ or HK$
+                if (!isCurrencyCode(text, i, wordEnd)
+                        && (wordEnd == end || Character.getType(text.charAt(wordEnd)) != Character.CURRENCY_SYMBOL))
+                    throw invalid(text, start, end);
+                i = wordEnd;
+                continue;
+            } else if (c != '+' && !isSkippable(c))
+                throw invalid(text, start, end);
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                seenDigit = true;
+                if (significantDigits < 18) {
+                    if (mantissa != 0 || c != '0')
+                        significantDigits++;
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (seenPoint)
+                        fractionDigits++;
+                } else if (!seenPoint) {
+                    // Integer digits that do not fit in the mantissa only scale it; fraction digits are dropped
+                    exponent++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (isGroupingSeparator(c) && !seenPoint && seenDigit && i + 1 < end && isDigit(text.charAt(i + 1))) {
+                continue;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit)
+            throw invalid(text, start, end);
+
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E') && i + 1 < end
+                && (isDigit(text.charAt(i + 1)) || text.charAt(i + 1) == '+' || text.charAt(i + 1) == '-')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (text.charAt(j) == '+' || text.charAt(j) == '-')
+                negativeExponent = text.charAt(j++) == '-';
+            int value = 0;
+            int digits = 0;
+            for (; j < end && isDigit(text.charAt(j)); j++, digits++) {
+                if (value < 1000)
+                    value = value * 10 + (text.charAt(j) - '0');
+            }
+            if (digits == 0)
+                throw invalid(text, start, end);
+            exponent += negativeExponent ? -value : value;
+            i = j;
+        }
+
+        // Suffix: an optional magnitude letter, then whitespace, currency symbols or codes and percent signs
+        while (i < end && isSkippable(text.charAt(i)))
+            i++;
+        if (i < end && (i + 1 == end || !Character.isLetter(text.charAt(i + 1)))) {
+            int magnitude = switch (text.charAt(i)) {
+                case 'k', 'K' -> 3;
+                case 'm', 'M' -> 6;
+                case 'b', 'B' -> 9;
+                case 't', 'T' -> 12;
+                default -> -1;
+            };
+            if (magnitude > 0) {
+                exponent += magnitude;
+                i++;
+            }
+        }
+        while (i < end) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c)) {
+                int wordEnd = wordEnd(text, i, end);
+                if (!isCurrencyCode(text, i, wordEnd))
+                    throw invalid(text, start, end);
+                i = wordEnd;
+            } else if (isSkippable(c)) {
+                i++;
+            } else {
+                throw invalid(text, start, end);
+            }
+        }
+
+        int shift = scale + exponent - fractionDigits;
+        long result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (shift >= 0) {
+            if (shift >= POWERS_OF_TEN.length || mantissa > Long.MAX_VALUE / POWERS_OF_TEN[shift])
+                throw new NumberFormatException("Number out of range: \"" + text.subSequence(start, end) + "\"");
+            result = mantissa * POWERS_OF_TEN[shift];
+        } else if (-shift >= POWERS_OF_TEN.length) {
+            result = 0;
+        } else {
+            long divisor = POWERS_OF_TEN[-shift];
+            result = mantissa / divisor;
+            if (mantissa % divisor >= divisor - mantissa % divisor)
+                result++;
+        }
+        return negative ? -result : result;
+    }
+
+    private static int wordEnd(CharSequence text, int i, int end) {
+        while (i < end && Character.isLetter(text.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static boolean isCurrencyCode(CharSequence text, int start, int end) {
+        if (end - start != 3)
+            return false;
+        for (String code : CURRENCY_CODES) {
+            if (Character.toUpperCase(text.charAt(start)) == code.charAt(0)
+                    && Character.toUpperCase(text.charAt(start + 1)) == code.charAt(1)
+                    && Character.toUpperCase(text.charAt(start + 2)) == code.charAt(2))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isGroupingSeparator(char c) {
+        return c == ',' || c == ' ' || c == '\'' || c == '\u00a0' || c == '\u202f';
+    }
+
+    private static boolean isSkippable(char c) {
+        return Character.isWhitespace(c) || c == '\u00a0' || c == '\u202f' || c == '%'
+                || Character.getType(c) == Character.CURRENCY_SYMBOL;
+    }
+
+    private static NumberFormatException invalid(CharSequence text, int start, int end) {
+        return new NumberFormatException("Not a number: \"" + text.subSequence(start, end) + "\"");
+    }
+}
@@ -0,0 +1,89 @@
+package etoro;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A sorted view over a company list that only orders as far as the pages that have been requested.
+ * <p>
+ * Asking for a page partitions the not-yet-sorted tail with quickselect so that the rows up to the end
+ * of that page are the smallest remaining ones, then sorts just that block. The first screen costs an
+ * expected O(n + k log k) pass for k visible rows; deeper pages are materialised only when visited,
+ * in blocks that at least double each time.
+ */
+public class PagedView {
+
+    private final Company[] companies;
+    private final Comparator<Company> comparator;
+    private int sortedCount = 0;
+
+    public PagedView(List<Company> companies, Comparator<Company> comparator) {
+        this.companies = companies.toArray(new Company[0]);
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return companies.length;
+    }
+
+    public List<Company> page(int pageIndex, int pageSize) {
+        int from = Math.min(pageIndex * pageSize, companies.length);
+        int to = Math.min(from + pageSize, companies.length);
+        ensureSorted(to);
+        return Arrays.asList(companies).subList(from, to);
+    }
+
+    private void ensureSorted(int count) {
+        if (count <= sortedCount)
+            return;
+
+        int target = Math.min(companies.length, Math.max(count, sortedCount * 2));
+        PipelineEvents.SortCompanies event = new PipelineEvents.SortCompanies();
+        event.begin();
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("sort", target - sortedCount);
+        try {
+            if (target < companies.length)
+                select(sortedCount, companies.length - 1, target);
+            Arrays.sort(companies, sortedCount, target, comparator);
+        } finally {
+            stage.close();
+        }
+        event.rows = target - sortedCount;
+        event.companies = companies.length;
+        event.commit();
+        sortedCount = target;
+    }
+
+    /**
+     * Rearranges {@code [left, right]} so that every row before {@code boundary} orders before every row from it on.
+     */
+    private void select(int left, int right, int boundary) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (left < boundary && boundary <= right) {
+            Company pivot = companies[left + random.nextInt(right - left + 1)];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (comparator.compare(companies[i], pivot) < 0)
+                    i++;
+                while (comparator.compare(companies[j], pivot) > 0)
+                    j--;
+                if (i <= j) {
+                    Company swap = companies[i];
+                    companies[i] = companies[j];
+                    companies[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (boundary <= j)
+                right = j;
+            else if (boundary >= i)
+                left = i;
+            else
+                return;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package etoro;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder events for the crawl, parse, persist and render stages. They cost next to nothing
+ * unless a recording enables them; the etoro.jfc profile shipped with the distribution does, e.g.
+ * {@code java -XX:StartFlightRecording:settings=etoro.jfc,filename=etoro.jfr -jar EtoroScraper.jar}.
+ * In JMC the events are grouped under the "Etoro" category.
+ */
+public final class PipelineEvents {
+
+    public static final String OK = "ok";
+
+    private PipelineEvents() {}
+
+    static String outcome(Throwable error) {
+        return error.getClass().getSimpleName();
+    }
+
+    @Name("etoro.CalendarFetch")
+    @Label("Calendar Fetch")
+    @Category({"Etoro", "Crawl"})
+    @Description("Download and parse of one source's dividend calendar")
+    public static class CalendarFetch extends Event {
+        @Label("Source")
+        public String source;
+        @Label("Rows")
+        public int rows;
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("etoro.MarketPageFetch")
+    @Label("Market Page Fetch")
+    @Category({"Etoro", "Crawl"})
+    @Description("Network round trip for one market page")
+    public static class MarketPageFetch extends Event {
+        @Label("Href")
+        public String href;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("etoro.MarketPageParse")
+    @Label("Market Page Parse")
+    @Category({"Etoro", "Crawl"})
+    @Description("Jsoup parse of one market page and extraction of price and market cap")
+    public static class MarketPageParse extends Event {
+        @Label("Href")
+        public String href;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("etoro.CompaniesSave")
+    @Label("Companies Save")
+    @Category({"Etoro", "Persist"})
+    @Description("Serialization of the companies file")
+    public static class CompaniesSave extends Event {
+        @Label("File")
+        public String file;
+        @Label("Companies")
+        public int companies;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("etoro.CompaniesLoad")
+    @Label("Companies Load")
+    @Category({"Etoro", "Persist"})
+    @Description("Deserialization of the companies file")
+    public static class CompaniesLoad extends Event {
+        @Label("File")
+        public String file;
+        @Label("Companies")
+        public int companies;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("etoro.SortCompanies")
+    @Label("Sort Companies")
+    @Category({"Etoro", "Render"})
+    @Description("Ordering of the rows needed for the requested page")
+    public static class SortCompanies extends Event {
+        @Label("Rows Sorted")
+        public int rows;
+        @Label("Companies")
+        public int companies;
+    }
+
+    @Name("etoro.FilterCompanies")
+    @Label("Filter Companies")
+    @Category({"Etoro", "Render"})
+    @Description("Selection of the companies carrying the current tag")
+    public static class FilterCompanies extends Event {
+        @Label("Tag")
+        public String tag;
+        @Label("Companies")
+        public int companies;
+        @Label("Matched")
+        public int matched;
+    }
+
+    @Name("etoro.RenderTable")
+    @Label("Render Table")
+    @Category({"Etoro", "Render"})
+    @Description("Terminal output of one page of the stock table")
+    public static class RenderTable extends Event {
+        @Label("Page")
+        public int page;
+        @Label("Rows")
+        public int rows;
+    }
+}
@@ -0,0 +1,137 @@
+package etoro;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage wall time, allocation, peak heap and GC pause figures for the load/crawl/save/render pipeline.
+ * Enabled by pointing {@code -Dpipeline.metrics=<file>} at the JSON report to write on exit;
+ * when the property is absent {@link #stage(String, int)} returns a no-op.
+ * Allocation is estimated process-wide from heap growth plus the bytes reclaimed by GCs during the stage.
+ */
+public class PipelineMetrics {
+
+    public record StageReport(String stage, int items, double wallMillis, long allocatedBytes,
+                              double allocationMBPerSecond, long peakHeapBytes, int gcCount,
+                              double gcPauseMillis, double maxGcPauseMillis) {}
+
+    public interface Stage extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Stage NO_OP = () -> {};
+    private static final String reportPath = System.getProperty("pipeline.metrics");
+    private static final List<StageReport> reports = new ArrayList<>();
+
+    private static final AtomicLong reclaimedBytes = new AtomicLong();
+    private static final AtomicLong gcCount = new AtomicLong();
+    private static final AtomicLong gcPauseMicros = new AtomicLong();
+    private static final AtomicLong maxGcPauseMicros = new AtomicLong();
+
+    static {
+        if (reportPath != null) {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter emitter)
+                    emitter.addNotificationListener((notification, handback) -> {
+                        if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                            recordGc(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+                    }, null, null);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(PipelineMetrics::writeReport, "pipeline-metrics"));
+        }
+    }
+
+    public static boolean isEnabled() {
+        return reportPath != null;
+    }
+
+    /**
+     * Starts measuring a stage; closing the returned handle records it. Stages should not be nested,
+     * since peak heap tracking is reset when a stage starts.
+     */
+    public static Stage stage(String name, int items) {
+        if (reportPath == null)
+            return NO_OP;
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long startHeap = memory.getHeapMemoryUsage().getUsed();
+        long startReclaimed = reclaimedBytes.get();
+        long startGcCount = gcCount.get();
+        long startGcPause = gcPauseMicros.get();
+        maxGcPauseMicros.set(0);
+        long start = System.nanoTime();
+
+        return () -> {
+            long wallNanos = System.nanoTime() - start;
+            long allocated = Math.max(0, memory.getHeapMemoryUsage().getUsed() - startHeap + reclaimedBytes.get() - startReclaimed);
+            long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+            double seconds = wallNanos / 1e9;
+            StageReport report = new StageReport(name, items, wallNanos / 1e6, allocated,
+                    seconds > 0 ? allocated / 1048576.0 / seconds : 0, peakHeap,
+                    (int) (gcCount.get() - startGcCount), (gcPauseMicros.get() - startGcPause) / 1000.0,
+                    maxGcPauseMicros.get() / 1000.0);
+            synchronized (reports) {
+                reports.add(report);
+            }
+        };
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.add(pool);
+        }
+        return pools;
+    }
+
+    private static void recordGc(GarbageCollectionNotificationInfo info) {
+        long before = 0;
+        long after = 0;
+        for (Map.Entry<String, MemoryUsage> usage : info.getGcInfo().getMemoryUsageBeforeGc().entrySet())
+            before += usage.getValue().getUsed();
+        for (Map.Entry<String, MemoryUsage> usage : info.getGcInfo().getMemoryUsageAfterGc().entrySet())
+            after += usage.getValue().getUsed();
+        reclaimedBytes.addAndGet(Math.max(0, before - after));
+
+        long pauseMicros = info.getGcInfo().getDuration() * 1000;
+        gcCount.incrementAndGet();
+        gcPauseMicros.addAndGet(pauseMicros);
+        maxGcPauseMicros.accumulateAndGet(pauseMicros, Math::max);
+    }
+
+    /**
+     * The stages recorded so far, in completion order.
+     */
+    static List<StageReport> reports() {
+        synchronized (reports) {
+            return new ArrayList<>(reports);
+        }
+    }
+
+    public static void writeReport() {
+        if (reportPath == null)
+            return;
+
+        List<StageReport> snapshot = reports();
+        try {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(reportPath), snapshot);
+        } catch (Exception e) {
+            System.out.println("Failed to write pipeline metrics to " + reportPath);
+        }
+    }
+}
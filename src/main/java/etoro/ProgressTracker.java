@@ -16,6 +16,18 @@ public class ProgressTracker {
         this.companiesCount = companiesCount;
     }
 
+    public int getCompaniesProcessed() {
+        return companiesProcessed.get();
+    }
+
+    public int getCompaniesCount() {
+        return companiesCount;
+    }
+
+    public int getProgress() {
+        return companiesCount == 0 ? 100 : (companiesProcessed.get() * 100) / companiesCount;
+    }
+
     public synchronized void incrementCompaniesProcessed() {
         int processed = companiesProcessed.incrementAndGet();
         int progress = (processed * 100) / companiesCount;
@@ -32,8 +44,8 @@ public class ProgressTracker {
     }
 
     public void displayStatus(int progress, int currentCompanyIndex) {
-        System.out.println("\nProcessed " + currentCompanyIndex + "/" + companiesCount + " companies (" + progress + "%)");
         long remainingTime = (long) ((companiesCount - currentCompanyIndex) * averageTimePerCompany);
-        System.out.println("Remaining time: " + remainingTime / 60 + ":" + String.format("%02d", remainingTime % 60));
+        Log.info("Processed " + currentCompanyIndex + "/" + companiesCount + " companies (" + progress + "%)",
+                "remaining", remainingTime / 60 + ":" + String.format("%02d", remainingTime % 60));
     }
 }
\ No newline at end of file
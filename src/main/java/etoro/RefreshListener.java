@@ -0,0 +1,30 @@
+package etoro;
+
+import java.util.Map;
+
+/**
+ * Receives rows from a background refresh as soon as the scraper has them,
+ * so a view can merge them without waiting for the whole update to finish.
+ * Called from scraper worker threads.
+ */
+public interface RefreshListener {
+
+    /**
+     * Called before a refresh touches any row, with the rows known at that point.
+     */
+    default void refreshStarted(Map<String, Company> companies) {}
+
+    default void companyUpdated(Company company) {}
+
+    default void companyRemoved(String companyName) {}
+
+    default void refreshFinished() {}
+
+    /**
+     * Whether the details of {@code company}, a row that already has a price, should be fetched again
+     * in this refresh instead of being kept. Called from the refresh thread before the crawl.
+     */
+    default boolean needsDetails(Company company) {
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+package etoro;
+
+import java.util.*;
+
+/**
+ * A composite sort order such as {@code sector asc, yield desc}. Keys are compared left to right;
+ * remaining ties are broken by company name so the order is deterministic.
+ */
+public class SortSpec {
+
+    private static final Map<String, Comparator<Company>> KEYS = new LinkedHashMap<>();
+
+    static {
+        KEYS.put("name", Comparator.comparing(Company::getFullName));
+        // Yields as last computed by YieldTable
+        KEYS.put("yield", Comparator.comparingDouble((Company company) -> company.grossYield));
+        KEYS.put("netyield", Comparator.comparingDouble((Company company) -> company.netYield));
+        KEYS.put("price", Comparator.comparingDouble(Company::getPrice));
+        KEYS.put("exdividend", Comparator.comparingLong(Company::getExDividendEpochDay));
+        KEYS.put("paymentdate", Comparator.comparingLong(Company::getDividendEpochDay));
+        KEYS.put("dividend", Comparator.comparingDouble(Company::getDividendPerShare));
+        KEYS.put("marketcap", Comparator.comparingLong(Company::getMarketCap));
+        KEYS.put("sector", Comparator.comparing((Company company) -> company.sector, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+    }
+
+    private final String label;
+    private final Comparator<Company> comparator;
+
+    private SortSpec(String label, Comparator<Company> comparator) {
+        this.label = label;
+        this.comparator = comparator;
+    }
+
+    public static Set<String> keys() {
+        return KEYS.keySet();
+    }
+
+    /**
+     * Parses a comma separated list of {@code <key> [asc|desc]} terms.
+     *
+     * @throws IllegalArgumentException on unknown keys or directions and on empty terms
+     */
+    public static SortSpec parse(String spec) {
+        return parse(spec, null);
+    }
+
+    public static SortSpec parse(String spec, String label) {
+        Comparator<Company> comparator = null;
+        List<String> terms = new ArrayList<>();
+        for (String term : spec.split(",", -1)) {
+            String[] parts = term.strip().toLowerCase(Locale.ROOT).split("\\s+");
+            if (parts.length == 0 || parts[0].isEmpty())
+                throw new IllegalArgumentException(spec.isBlank() ? "Empty sort spec" : "Empty term in sort spec: " + spec);
+
+            Comparator<Company> key = KEYS.get(parts[0]);
+            if (key == null)
+                throw new IllegalArgumentException("Unknown sort key: " + parts[0]);
+            if (parts.length > 2 || (parts.length == 2 && !parts[1].equals("asc") && !parts[1].equals("desc")))
+                throw new IllegalArgumentException("Expected asc or desc after " + parts[0]);
+            if (parts.length == 2 && parts[1].equals("desc"))
+                key = key.reversed();
+
+            comparator = comparator == null ? key : comparator.thenComparing(key);
+            terms.add(String.join(" ", parts));
+        }
+        comparator = comparator.thenComparing(Company::getFullName, Comparator.nullsLast(Comparator.naturalOrder()));
+        return new SortSpec(label != null ? label : String.join(", ", terms), comparator);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Comparator<Company> getComparator() {
+        return comparator;
+    }
+}
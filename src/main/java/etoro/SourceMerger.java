@@ -0,0 +1,183 @@
+package etoro;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Merges calendar rows from several {@link DividendSource}s into one row per company.
+ * Rows are matched on the normalised full name. Each field is taken from the first source, in that
+ * field's precedence order, that has a value for it; sources whose data is older than their
+ * freshness window are only used when no fresh source has the field.
+ * <p>
+ * Several rows for one company become {@link DividendEvent}s, matched across sources on ex-dividend date,
+ * payment date and dividend, where a value a source lacks matches any; so a regular and a special dividend
+ * on the same ex-dividend date stay apart. The payment date and dividend of each event are chosen the same way.
+ */
+public class SourceMerger {
+
+    public record SourceResult(DividendSource source, List<Company> rows, Instant dataTimestamp) {
+
+        boolean isFresh(Instant now) {
+            return !dataTimestamp.plus(source.getFreshness()).isBefore(now);
+        }
+
+        // Results key the per-company candidate maps, so they must not hash their whole row list
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    public record MergedRow(Company company, DividendSource detailSource) {}
+
+    private record Field(String name, Predicate<Company> present, BiConsumer<Company, Company> copy) {}
+
+    private record EventField(String name, ToLongFunction<DividendEvent> value) {}
+
+    private static final List<Field> FIELDS = List.of(
+            new Field("name", c -> c.name != null && !c.name.isBlank(), (to, from) -> to.name = from.name),
+            new Field("sector", c -> c.sector != null && !c.sector.isBlank(), (to, from) -> to.sector = from.sector),
+            new Field("marketHref", c -> c.marketHref != null && !c.marketHref.isBlank(), (to, from) -> to.marketHref = from.marketHref)
+    );
+
+    private static final EventField DIVIDEND_DATE = new EventField("dividendDate", DividendEvent::dividendEpochDay);
+    private static final EventField DIVIDEND_PER_SHARE = new EventField("dividendPerShare", DividendEvent::dividendPerShareMicros);
+
+    private final Map<String, List<String>> fieldPrecedence = new HashMap<>();
+
+    /**
+     * Reads field precedence from {@code dividend.precedence.<field>} system properties,
+     * e.g. {@code -Ddividend.precedence.dividendPerShare=file:fixtures/companies.json,etoro}.
+     */
+    public static SourceMerger configured() {
+        SourceMerger merger = new SourceMerger();
+        List<String> fields = new ArrayList<>();
+        FIELDS.forEach(field -> fields.add(field.name()));
+        fields.add(DIVIDEND_DATE.name());
+        fields.add(DIVIDEND_PER_SHARE.name());
+        for (String field : fields) {
+            String order = System.getProperty("dividend.precedence." + field);
+            if (order != null)
+                merger.prefer(field, order.split(","));
+        }
+        return merger;
+    }
+
+    public SourceMerger prefer(String field, String... sourceNames) {
+        List<String> order = new ArrayList<>();
+        for (String sourceName : sourceNames)
+            order.add(sourceName.strip());
+        fieldPrecedence.put(field, order);
+        return this;
+    }
+
+    static String key(String fullName) {
+        return fullName.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param results source results in configured order, which is the default precedence for every field
+     */
+    public List<MergedRow> merge(List<SourceResult> results) {
+        Instant now = Instant.now();
+        long today = LocalDate.now().toEpochDay();
+        Map<String, Map<SourceResult, List<Company>>> candidates = new LinkedHashMap<>();
+        for (SourceResult result : results) {
+            for (Company row : result.rows()) {
+                if (row.fullName == null || row.fullName.isBlank())
+                    continue;
+                candidates.computeIfAbsent(key(row.fullName), k -> new LinkedHashMap<>())
+                        .computeIfAbsent(result, r -> new ArrayList<>()).add(row);
+            }
+        }
+
+        List<MergedRow> merged = new ArrayList<>(candidates.size());
+        for (Map<SourceResult, List<Company>> rows : candidates.values()) {
+            Company company = null;
+            DividendSource detailSource = null;
+            for (Field field : FIELDS) {
+                for (SourceResult result : order(field.name(), rows.keySet(), now)) {
+                    Company row = rows.get(result).get(0);
+                    if (company == null)
+                        company = new Company(row);
+                    if (field.present().test(row)) {
+                        field.copy().accept(company, row);
+                        if (field.name().equals("marketHref"))
+                            detailSource = result.source();
+                        break;
+                    }
+                }
+            }
+            if (detailSource == null)
+                detailSource = rows.keySet().iterator().next().source();
+
+            company.dividendEvents = new ArrayList<>();
+            company.mergeDividendEvents(mergeEvents(rows, now), today);
+            merged.add(new MergedRow(company, detailSource));
+        }
+        return merged;
+    }
+
+    private List<DividendEvent> mergeEvents(Map<SourceResult, List<Company>> rows, Instant now) {
+        // Each source's version of every distinct event
+        List<Map<SourceResult, DividendEvent>> matched = new ArrayList<>();
+        rows.forEach((result, companyRows) -> {
+            for (Company row : companyRows) {
+                for (DividendEvent event : row.dividendEvents) {
+                    Map<SourceResult, DividendEvent> candidates = null;
+                    for (Map<SourceResult, DividendEvent> known : matched) {
+                        DividendEvent own = known.get(result);
+                        if (own != null ? own.equals(event) : known.values().stream().allMatch(event::matches)) {
+                            candidates = known;
+                            break;
+                        }
+                    }
+                    if (candidates == null) {
+                        candidates = new LinkedHashMap<>();
+                        matched.add(candidates);
+                    }
+                    candidates.putIfAbsent(result, event);
+                }
+            }
+        });
+
+        List<DividendEvent> events = new ArrayList<>(matched.size());
+        for (Map<SourceResult, DividendEvent> candidates : matched) {
+            events.add(new DividendEvent(candidates.values().iterator().next().exDividendEpochDay(),
+                    pick(DIVIDEND_DATE, candidates, now), pick(DIVIDEND_PER_SHARE, candidates, now)));
+        }
+        return events;
+    }
+
+    private long pick(EventField field, Map<SourceResult, DividendEvent> candidates, Instant now) {
+        for (SourceResult result : order(field.name(), candidates.keySet(), now)) {
+            long value = field.value().applyAsLong(candidates.get(result));
+            if (value != 0)
+                return value;
+        }
+        return 0;
+    }
+
+    private List<SourceResult> order(String field, Collection<SourceResult> results, Instant now) {
+        List<SourceResult> ordered = new ArrayList<>(results);
+        List<String> precedence = fieldPrecedence.get(field);
+        Comparator<SourceResult> byFreshness = Comparator.comparing((SourceResult result) -> !result.isFresh(now));
+        if (precedence != null) {
+            byFreshness = byFreshness.thenComparingInt(result -> {
+                int index = precedence.indexOf(result.source().getName());
+                return index < 0 ? Integer.MAX_VALUE : index;
+            });
+        }
+        ordered.sort(byFreshness);
+        return ordered;
+    }
+}
@@ -0,0 +1,259 @@
+package etoro;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Favourites, user-defined tags and notes, keyed by company full name.
+ * <p>
+ * State is kept in a snapshot file plus an append-only journal. Every edit is appended to the journal
+ * by a background writer as soon as it is made, so a crash loses at most the edit in flight. On load
+ * the journal is replayed over the snapshot and both are compacted into a new snapshot.
+ * Entries for companies that are not currently listed are kept, so they reappear with the company.
+ */
+public class UserStateStore {
+
+    public static final String FAVOURITE = "FAVOURITE";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Set<String> favourites = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> tags = new ConcurrentHashMap<>();
+    private final Map<String, String> notes = new ConcurrentHashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-state-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private UserStateStore(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = Path.of(snapshotFile + ".journal");
+    }
+
+    /**
+     * Loads the store, importing the legacy favourites.txt list when no snapshot exists yet.
+     */
+    public static UserStateStore load(Path snapshotFile, Path legacyFavouritesFile) {
+        UserStateStore store = new UserStateStore(snapshotFile);
+        try {
+            if (Files.exists(snapshotFile))
+                store.readSnapshot();
+            else if (Files.exists(legacyFavouritesFile))
+                store.favourites.addAll(objectMapper.readValue(legacyFavouritesFile.toFile(), new TypeReference<List<String>>() {}));
+        } catch (IOException e) {
+            Log.warn("Failed to read user state", "file", snapshotFile, "cause", e);
+        }
+
+        try {
+            if (Files.exists(store.journalFile))
+                store.replayJournal();
+        } catch (IOException e) {
+            Log.warn("Failed to replay user state journal", "file", store.journalFile, "cause", e);
+        }
+        store.writer.submit(store::compact);
+        return store;
+    }
+
+    private void readSnapshot() throws IOException {
+        JsonNode root = objectMapper.readTree(snapshotFile.toFile());
+        root.path("favourites").forEach(node -> favourites.add(node.asText()));
+        root.path("tags").properties().forEach(entry -> {
+            Set<String> companyTags = ConcurrentHashMap.newKeySet();
+            entry.getValue().forEach(node -> companyTags.add(node.asText()));
+            if (!companyTags.isEmpty())
+                tags.put(entry.getKey(), companyTags);
+        });
+        root.path("notes").properties().forEach(entry -> notes.put(entry.getKey(), entry.getValue().asText()));
+    }
+
+    private void replayJournal() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                JsonNode edit;
+                try {
+                    edit = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    // A torn last line from a crash mid-write
+                    continue;
+                }
+                String company = edit.path("company").asText();
+                switch (edit.path("op").asText()) {
+                    case "favourite" -> applyFavourite(company, edit.path("value").asBoolean());
+                    case "tag" -> applyTag(company, edit.path("tag").asText(), edit.path("value").asBoolean());
+                    case "note" -> applyNote(company, edit.path("note").isNull() ? null : edit.path("note").asText());
+                    default -> {}
+                }
+            }
+        }
+    }
+
+    public boolean isFavourite(String company) {
+        return favourites.contains(company);
+    }
+
+    public Set<String> getTags(String company) {
+        Set<String> companyTags = tags.get(company);
+        return companyTags == null ? Set.of() : Collections.unmodifiableSet(companyTags);
+    }
+
+    /**
+     * User tags of a company including {@link #FAVOURITE}, for rule evaluation.
+     */
+    public Set<String> getAllTags(String company) {
+        Set<String> companyTags = tags.get(company);
+        boolean favourite = favourites.contains(company);
+        if (companyTags == null)
+            return favourite ? Set.of(FAVOURITE) : Set.of();
+        Set<String> all = new HashSet<>(companyTags);
+        if (favourite)
+            all.add(FAVOURITE);
+        return all;
+    }
+
+    public String getNote(String company) {
+        return notes.get(company);
+    }
+
+    public void setFavourite(String company, boolean favourite) {
+        applyFavourite(company, favourite);
+        ObjectNode edit = edit("favourite", company);
+        edit.put("value", favourite);
+        append(edit);
+    }
+
+    public void setTag(String company, String tag, boolean present) {
+        applyTag(company, tag, present);
+        ObjectNode edit = edit("tag", company);
+        edit.put("tag", tag);
+        edit.put("value", present);
+        append(edit);
+    }
+
+    public void setNote(String company, String note) {
+        if (note != null && note.isBlank())
+            note = null;
+        applyNote(company, note);
+        ObjectNode edit = edit("note", company);
+        edit.put("note", note);
+        append(edit);
+    }
+
+    /**
+     * Copies the favourite flag and user tags onto the matching company rows.
+     * Costs one lookup per stored entry, not per company.
+     */
+    public void applyTo(Map<String, Company> companies) {
+        for (String company : favourites) {
+            Company row = companies.get(company);
+            if (row != null)
+                row.addTag(FAVOURITE);
+        }
+        tags.forEach((company, companyTags) -> {
+            Company row = companies.get(company);
+            if (row != null)
+                row.tags.addAll(companyTags);
+        });
+    }
+
+    public void applyTo(Company company) {
+        if (favourites.contains(company.fullName))
+            company.addTag(FAVOURITE);
+        company.tags.addAll(getTags(company.fullName));
+    }
+
+    /**
+     * Waits for pending edits and compacts the journal into the snapshot.
+     */
+    public void close() {
+        writer.submit(this::compact);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyFavourite(String company, boolean favourite) {
+        if (favourite)
+            favourites.add(company);
+        else
+            favourites.remove(company);
+    }
+
+    private void applyTag(String company, String tag, boolean present) {
+        if (present) {
+            tags.computeIfAbsent(company, c -> ConcurrentHashMap.newKeySet()).add(tag);
+        } else {
+            tags.computeIfPresent(company, (c, companyTags) -> {
+                companyTags.remove(tag);
+                return companyTags.isEmpty() ? null : companyTags;
+            });
+        }
+    }
+
+    private void applyNote(String company, String note) {
+        if (note == null)
+            notes.remove(company);
+        else
+            notes.put(company, note);
+    }
+
+    private ObjectNode edit(String operation, String company) {
+        ObjectNode edit = objectMapper.createObjectNode();
+        edit.put("op", operation);
+        edit.put("company", company);
+        return edit;
+    }
+
+    private void append(ObjectNode edit) {
+        writer.submit(() -> {
+            try {
+                Files.writeString(journalFile, objectMapper.writeValueAsString(edit) + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            } catch (IOException e) {
+                Log.error("Failed to save user state edit", "file", journalFile, "cause", e);
+            }
+        });
+    }
+
+    private void compact() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("favourites", new TreeSet<>(favourites));
+        Map<String, Set<String>> sortedTags = new TreeMap<>();
+        tags.forEach((company, companyTags) -> sortedTags.put(company, new TreeSet<>(companyTags)));
+        snapshot.put("tags", sortedTags);
+        snapshot.put("notes", new TreeMap<>(notes));
+
+        try {
+            File temporary = new File(snapshotFile + ".tmp");
+            objectMapper.writeValue(temporary, snapshot);
+            Files.move(temporary.toPath(), snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            Log.error("Failed to compact user state", "file", snapshotFile, "cause", e);
+        }
+    }
+}
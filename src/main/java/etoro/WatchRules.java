@@ -0,0 +1,346 @@
+package etoro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Watchlist alerts evaluated incrementally on the companies touched by a refresh.
+ * <p>
+ * Rules are read one per line as {@code name: condition and condition ...}, where a condition is
+ * {@code tag <TAG>}, {@code sector = <name>} or {@code <metric> <op> <number>}. Metrics are
+ * {@code yield} (%), {@code price}, {@code dividend}, {@code marketCap}, {@code exDividendIn} and
+ * {@code dividendIn} (days from today) and {@code priceChange} (% since the previous price seen).
+ * Identical conditions are compiled into a single node shared by every rule that uses it, so each
+ * node is evaluated at most once per changed company. A rule fires when it becomes true for a company
+ * and fires again only after it has been false in between; which rules have fired is kept in
+ * {@code <rules file>.state}, so a restart does not repeat them.
+ * <p>
+ * Rows that do not change produce no update, so at the end of every refresh the rules with an
+ * {@code exDividendIn} or {@code dividendIn} condition are evaluated again against every known company;
+ * a row that moves into such a window as days pass fires then.
+ * <p>
+ * Refreshes only fetch prices for new rows, so {@code priceChange} is known for watched companies only:
+ * favourites, and companies with every tag a {@code priceChange} rule requires. Their market pages are
+ * fetched again on each refresh, see {@link #needsDetails(Company)}.
+ */
+public class WatchRules implements RefreshListener {
+
+    private record Rule(String name, int[] conditions, boolean priceChange, boolean dated, List<String> tags) {}
+
+    private record Metric(String name, ToDoubleFunction<Evaluation> value) {}
+
+    private interface Condition {
+        boolean test(Evaluation evaluation);
+    }
+
+    private static class Evaluation {
+        Company company;
+        long previousPriceMicros;
+        long today;
+        Set<String> userTags;
+    }
+
+    private static final String PRICE_CHANGE = "priceChange";
+    private static final Set<String> DATE_METRICS = Set.of("exDividendIn", "dividendIn");
+
+    private static final List<Metric> METRICS = List.of(
+            new Metric("yield", e -> e.company.priceMicros > 0 ? e.company.getDividendYield() * 100 : Double.NaN),
+            new Metric("price", e -> e.company.getPrice()),
+            new Metric("dividend", e -> e.company.getDividendPerShare()),
+            new Metric("marketCap", e -> e.company.marketCap == 0 ? Double.NaN : e.company.marketCap),
+            new Metric("exDividendIn", e -> e.company.exDividendEpochDay - e.today),
+            new Metric("dividendIn", e -> e.company.dividendEpochDay - e.today),
+            new Metric(PRICE_CHANGE, e -> e.previousPriceMicros > 0 && e.company.priceMicros > 0
+                    ? (double) (e.company.priceMicros - e.previousPriceMicros) / e.previousPriceMicros * 100
+                    : Double.NaN)
+    );
+
+    private final Map<String, Integer> nodeIds = new HashMap<>();
+    private final List<Condition> nodes = new ArrayList<>();
+    private final Map<Integer, String> tagNodes = new HashMap<>();
+    private final Set<Integer> priceChangeNodes = new HashSet<>();
+    private final Set<Integer> dateNodes = new HashSet<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<String, Long> lastPrices = new HashMap<>();
+    private final Map<String, Company> known = new HashMap<>();
+    private final Set<String> activeFirings = new HashSet<>();
+    private final AlertSink sink;
+    private final Path stateFile;
+    private boolean stateChanged = false;
+    private Function<String, Set<String>> userTags = name -> Set.of();
+    private Clock clock = Clock.systemDefaultZone();
+
+    public WatchRules(AlertSink sink) {
+        this(sink, null);
+    }
+
+    /**
+     * @param stateFile where fired rules are kept between runs, or null to keep them in memory only
+     */
+    public WatchRules(AlertSink sink, Path stateFile) {
+        this.sink = sink;
+        this.stateFile = stateFile;
+        if (stateFile != null)
+            loadState();
+    }
+
+    public static WatchRules load(Path rulesFile, AlertSink sink) throws IOException {
+        WatchRules watchRules = new WatchRules(sink, Path.of(rulesFile + ".state"));
+        for (String line : Files.readAllLines(rulesFile)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            int colon = line.indexOf(':');
+            if (colon < 0)
+                throw new IllegalArgumentException("Rule needs a name: " + line);
+            watchRules.addRule(line.substring(0, colon).strip(), line.substring(colon + 1));
+        }
+        return watchRules;
+    }
+
+    /**
+     * Loads the rules file named by the {@code alerts.rules} system property (default rules.txt),
+     * or returns null when there is no such file.
+     */
+    public static WatchRules configured(String defaultSink) {
+        Path rulesFile = Path.of(System.getProperty("alerts.rules", "rules.txt"));
+        if (!Files.exists(rulesFile))
+            return null;
+        try {
+            return load(rulesFile, AlertSink.configured(defaultSink));
+        } catch (Exception e) {
+            Log.warn("Failed to load watchlist rules", "file", rulesFile, "cause", e);
+            return null;
+        }
+    }
+
+    /**
+     * Supplies tags kept outside the scraped rows, such as favourites, for {@code tag} conditions.
+     */
+    public synchronized void setUserTags(Function<String, Set<String>> userTags) {
+        this.userTags = userTags;
+    }
+
+    /**
+     * Sets the clock that {@code exDividendIn} and {@code dividendIn} count days from.
+     */
+    synchronized void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized void addRule(String name, String expression) {
+        String[] terms = expression.strip().split("(?i)\\s+and\\s+");
+        int[] conditions = new int[terms.length];
+        boolean priceChange = false;
+        boolean dated = false;
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < terms.length; i++) {
+            conditions[i] = node(terms[i].strip());
+            priceChange |= priceChangeNodes.contains(conditions[i]);
+            dated |= dateNodes.contains(conditions[i]);
+            if (tagNodes.containsKey(conditions[i]))
+                tags.add(tagNodes.get(conditions[i]));
+        }
+        rules.add(new Rule(name, conditions, priceChange, dated, tags));
+    }
+
+    private int node(String term) {
+        String[] tokens = term.split("\\s+", 3);
+        String key;
+        Condition condition;
+
+        if (tokens.length == 2 && tokens[0].equalsIgnoreCase("tag")) {
+            String tag = tokens[1];
+            key = "tag " + tag;
+            condition = e -> e.company.tags.contains(tag) || e.userTags.contains(tag);
+        } else if (tokens.length == 3 && tokens[0].equalsIgnoreCase("sector") && tokens[1].equals("=")) {
+            String sector = tokens[2];
+            key = "sector = " + sector;
+            condition = e -> sector.equalsIgnoreCase(e.company.sector);
+        } else if (tokens.length == 3) {
+            Metric metric = METRICS.stream()
+                    .filter(m -> m.name().equalsIgnoreCase(tokens[0]))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown metric in rule condition: " + term));
+            double threshold = Double.parseDouble(tokens[2].replace("%", ""));
+            String operator = tokens[1];
+            key = metric.name() + " " + operator + " " + threshold;
+            condition = compare(metric.value(), operator, threshold);
+        } else {
+            throw new IllegalArgumentException("Invalid rule condition: " + term);
+        }
+
+        int id = nodeIds.computeIfAbsent(key, k -> {
+            nodes.add(condition);
+            return nodes.size() - 1;
+        });
+        if (key.startsWith("tag "))
+            tagNodes.put(id, key.substring("tag ".length()));
+        else if (key.startsWith(PRICE_CHANGE + " "))
+            priceChangeNodes.add(id);
+        else if (DATE_METRICS.contains(key.substring(0, key.indexOf(' '))))
+            dateNodes.add(id);
+        return id;
+    }
+
+    private static Condition compare(ToDoubleFunction<Evaluation> value, String operator, double threshold) {
+        return switch (operator) {
+            case ">" -> e -> value.applyAsDouble(e) > threshold;
+            case ">=" -> e -> value.applyAsDouble(e) >= threshold;
+            case "<" -> e -> value.applyAsDouble(e) < threshold;
+            case "<=" -> e -> value.applyAsDouble(e) <= threshold;
+            case "=", "==" -> e -> value.applyAsDouble(e) == threshold;
+            case "!=" -> e -> value.applyAsDouble(e) != threshold;
+            default -> throw new IllegalArgumentException("Unknown operator in rule condition: " + operator);
+        };
+    }
+
+    /**
+     * Evaluates every rule against one changed company.
+     */
+    public synchronized void evaluate(Company company) {
+        Long previousPriceMicros = lastPrices.put(company.fullName, company.priceMicros);
+        if (rules.isEmpty())
+            return;
+        if (anyDatedRule())
+            known.put(company.fullName, company);
+        evaluate(company, previousPriceMicros == null ? 0 : previousPriceMicros, false);
+    }
+
+    /**
+     * @param datedOnly only evaluate rules with a date condition and no {@code priceChange} condition, whose
+     *                  outcome can change while the company does not
+     */
+    private void evaluate(Company company, long previousPriceMicros, boolean datedOnly) {
+        Evaluation evaluation = new Evaluation();
+        evaluation.company = company;
+        evaluation.previousPriceMicros = previousPriceMicros;
+        evaluation.today = LocalDate.now(clock).toEpochDay();
+        evaluation.userTags = userTags.apply(company.fullName);
+
+        byte[] results = new byte[nodes.size()];
+        for (Rule rule : rules) {
+            if (datedOnly && (!rule.dated() || rule.priceChange()))
+                continue;
+            boolean matches = true;
+            for (int node : rule.conditions()) {
+                if (results[node] == 0)
+                    results[node] = nodes.get(node).test(evaluation) ? (byte) 1 : (byte) 2;
+                if (results[node] == 2) {
+                    matches = false;
+                    break;
+                }
+            }
+
+            String firing = rule.name() + '\u0000' + company.fullName;
+            if (!matches) {
+                stateChanged |= activeFirings.remove(firing);
+            } else if (activeFirings.add(firing)) {
+                stateChanged = true;
+                sink.fire(rule.name(), company, describe(company));
+            }
+        }
+    }
+
+    /**
+     * Whether {@code company} is watched by a {@code priceChange} rule: it is a favourite, or it has every
+     * tag of a {@code priceChange} rule that requires tags.
+     */
+    @Override
+    public synchronized boolean needsDetails(Company company) {
+        Set<String> companyUserTags = null;
+        for (Rule rule : rules) {
+            if (!rule.priceChange())
+                continue;
+            if (companyUserTags == null) {
+                companyUserTags = userTags.apply(company.fullName);
+                if (company.tags.contains(UserStateStore.FAVOURITE) || companyUserTags.contains(UserStateStore.FAVOURITE))
+                    return true;
+            }
+            if (rule.tags().isEmpty())
+                continue;
+            boolean tagged = true;
+            for (String tag : rule.tags())
+                tagged &= company.tags.contains(tag) || companyUserTags.contains(tag);
+            if (tagged)
+                return true;
+        }
+        return false;
+    }
+
+    private String describe(Company company) {
+        return String.format("%s: yield %.2f%%, price %.2f, ex-dividend %s, payment %s",
+                company.fullName, company.getDividendYield() * 100, company.getPrice(),
+                company.getExDividendDateString(), company.getDividendDateString());
+    }
+
+    private boolean anyDatedRule() {
+        for (Rule rule : rules) {
+            if (rule.dated())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void refreshStarted(Map<String, Company> companies) {
+        companies.values().forEach(company -> lastPrices.putIfAbsent(company.fullName, company.priceMicros));
+        if (anyDatedRule())
+            companies.values().forEach(company -> known.putIfAbsent(company.fullName, new Company(company)));
+    }
+
+    @Override
+    public void companyUpdated(Company company) {
+        evaluate(company);
+    }
+
+    @Override
+    public synchronized void companyRemoved(String companyName) {
+        lastPrices.remove(companyName);
+        known.remove(companyName);
+        stateChanged |= activeFirings.removeIf(firing -> firing.endsWith('\u0000' + companyName));
+    }
+
+    @Override
+    public synchronized void refreshFinished() {
+        for (Company company : known.values())
+            evaluate(company, company.priceMicros, true);
+
+        if (stateFile == null || !stateChanged)
+            return;
+        // One "rule<TAB>company" line per rule that has fired and not yet been false again
+        List<String> lines = new ArrayList<>(activeFirings.size());
+        for (String firing : activeFirings)
+            lines.add(firing.replace('\u0000', '\t'));
+        Collections.sort(lines);
+        try {
+            Path temporary = Path.of(stateFile + ".tmp");
+            Files.write(temporary, lines);
+            Files.move(temporary, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stateChanged = false;
+        } catch (IOException e) {
+            Log.warn("Failed to save watchlist state", "file", stateFile, "cause", e);
+        }
+    }
+
+    private void loadState() {
+        if (!Files.exists(stateFile))
+            return;
+        try {
+            for (String line : Files.readAllLines(stateFile)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0)
+                    activeFirings.add(line.substring(0, tab) + '\u0000' + line.substring(tab + 1));
+            }
+        } catch (IOException e) {
+            Log.warn("Failed to load watchlist state", "file", stateFile, "cause", e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package etoro;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dividend withholding-tax rates by listing country, with the country inferred from the exchange
+ * suffix of the market href ({@code /markets/bats.l} is London, {@code /markets/aapl} without a
+ * suffix is the US).
+ * <p>
+ * The built-in rates are what a foreign retail investor typically has withheld. Since the real rate
+ * depends on the account's domicile, they can be overridden from a properties file
+ * ({@code -Dtax.rates}, withholding.properties by default) with lines such as {@code US=30},
+ * {@code default=15} for unknown countries, and {@code exchange.TO=CA} to map further suffixes.
+ * Rates are percentages. The file is re-read when it changes, see {@link #reloadIfModified()}.
+ */
+public class WithholdingTax {
+
+    private static final Map<String, String> DEFAULT_EXCHANGES = Map.ofEntries(
+            Map.entry("", "US"), Map.entry("L", "GB"), Map.entry("DE", "DE"), Map.entry("PA", "FR"),
+            Map.entry("MI", "IT"), Map.entry("MC", "ES"), Map.entry("AS", "NL"), Map.entry("BR", "BE"),
+            Map.entry("LSB", "PT"), Map.entry("ST", "SE"), Map.entry("OL", "NO"), Map.entry("CO", "DK"),
+            Map.entry("HE", "FI"), Map.entry("ZU", "CH"), Map.entry("HK", "HK"),
+            // US share classes, e.g. brk.b
+            Map.entry("A", "US"), Map.entry("B", "US"));
+
+    private static final Map<String, Double> DEFAULT_RATES = Map.ofEntries(
+            Map.entry("US", 15.0), Map.entry("GB", 0.0), Map.entry("DE", 26.375), Map.entry("FR", 12.8),
+            Map.entry("IT", 26.0), Map.entry("ES", 19.0), Map.entry("NL", 15.0), Map.entry("BE", 30.0),
+            Map.entry("PT", 25.0), Map.entry("SE", 30.0), Map.entry("NO", 25.0), Map.entry("DK", 27.0),
+            Map.entry("FI", 35.0), Map.entry("CH", 35.0), Map.entry("HK", 0.0));
+
+    private static final double DEFAULT_RATE = 10.0;
+
+    private final Path file;
+    private volatile Map<String, String> exchanges = DEFAULT_EXCHANGES;
+    private volatile Map<String, Double> rates = DEFAULT_RATES;
+    private volatile double defaultRate = DEFAULT_RATE;
+    private final Map<String, Double> rateByHref = new ConcurrentHashMap<>();
+    private FileTime loadedModified;
+    private volatile long version = 0;
+
+    public WithholdingTax(Path file) {
+        this.file = file;
+    }
+
+    public static WithholdingTax configured() {
+        WithholdingTax tax = new WithholdingTax(Path.of(System.getProperty("tax.rates", "withholding.properties")));
+        tax.reloadIfModified();
+        return tax;
+    }
+
+    /**
+     * Incremented whenever the rates change, so cached yields can tell they are stale.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Re-reads the rates file if it appeared, changed or disappeared since the last read.
+     *
+     * @return whether the rates changed
+     */
+    public synchronized boolean reloadIfModified() {
+        FileTime modified = null;
+        try {
+            if (Files.exists(file))
+                modified = Files.getLastModifiedTime(file);
+        } catch (IOException ignored) {}
+        if (modified == null ? loadedModified == null : modified.equals(loadedModified))
+            return false;
+
+        Map<String, String> newExchanges = new HashMap<>(DEFAULT_EXCHANGES);
+        Map<String, Double> newRates = new HashMap<>(DEFAULT_RATES);
+        double newDefaultRate = DEFAULT_RATE;
+        if (modified != null) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                Log.warn("Failed to read withholding tax rates, keeping previous rates", "file", file, "cause", e);
+                return false;
+            }
+            for (String key : properties.stringPropertyNames()) {
+                String value = properties.getProperty(key).strip();
+                try {
+                    if (key.startsWith("exchange."))
+                        newExchanges.put(key.substring("exchange.".length()).toUpperCase(Locale.ROOT), value.toUpperCase(Locale.ROOT));
+                    else if (key.equals("default"))
+                        newDefaultRate = Double.parseDouble(value);
+                    else
+                        newRates.put(key.toUpperCase(Locale.ROOT), Double.parseDouble(value));
+                } catch (NumberFormatException e) {
+                    Log.warn("Ignoring invalid withholding tax rate", "file", file, "key", key, "value", value);
+                }
+            }
+        }
+
+        exchanges = newExchanges;
+        rates = newRates;
+        defaultRate = newDefaultRate;
+        rateByHref.clear();
+        loadedModified = modified;
+        version++;
+        return true;
+    }
+
+    /**
+     * Listing country for a market href, or null when the exchange suffix is unknown.
+     */
+    public String country(String marketHref) {
+        return marketHref == null ? null : exchanges.get(exchangeSuffix(marketHref));
+    }
+
+    /**
+     * Withholding rate for a market href as a fraction, e.g. 0.15.
+     */
+    public double rate(String marketHref) {
+        if (marketHref == null)
+            return defaultRate / 100;
+        return rateByHref.computeIfAbsent(marketHref, href -> {
+            String country = country(href);
+            Double rate = country == null ? null : rates.get(country);
+            return (rate == null ? defaultRate : rate) / 100;
+        });
+    }
+
+    static String exchangeSuffix(String marketHref) {
+        int end = marketHref.length();
+        while (end > 0 && marketHref.charAt(end - 1) == '/')
+            end--;
+        int start = marketHref.lastIndexOf('/', end - 1) + 1;
+        int dot = marketHref.lastIndexOf('.', end - 1);
+        if (dot < start)
+            return "";
+        return marketHref.substring(dot + 1, end).toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,82 @@
+package etoro;
+
+import java.util.Collection;
+
+/**
+ * Gross and net (after withholding tax) dividend yields for a whole company snapshot, computed in one
+ * bulk pass over primitive arrays and written to {@link Company#grossYield}, {@link Company#netYield}
+ * and {@link Company#withholdingRate}. Results are kept until the snapshot version or the tax table changes.
+ */
+public class YieldTable {
+
+    private final WithholdingTax tax;
+    private long computedVersion = -1;
+    private long computedTaxVersion = -1;
+    private double[] price = new double[0];
+    private double[] dividend = new double[0];
+    private double[] rate = new double[0];
+    private double[] gross = new double[0];
+    private double[] net = new double[0];
+
+    public YieldTable(WithholdingTax tax) {
+        this.tax = tax;
+    }
+
+    public WithholdingTax getTax() {
+        return tax;
+    }
+
+    /**
+     * Computes {@code gross = dividend / price} (0 when unpriced) and {@code net = gross * (1 - rate)}
+     * for the first {@code length} entries.
+     */
+    private static void compute(double[] price, double[] dividend, double[] rate, double[] gross, double[] net, int length) {
+        for (int i = 0; i < length; i++) {
+            gross[i] = price[i] > 0 ? dividend[i] / price[i] : 0;
+            net[i] = gross[i] * (1 - rate[i]);
+        }
+    }
+
+    /**
+     * Recomputes the yields of {@code companies} unless they were computed for the same
+     * {@code version} and tax table already.
+     *
+     * @param version a number that changes whenever companies are added, removed or repriced
+     * @return whether the yields were recomputed
+     */
+    public synchronized boolean update(Collection<Company> companies, long version) {
+        if (version == computedVersion && tax.getVersion() == computedTaxVersion)
+            return false;
+
+        int length = companies.size();
+        if (price.length < length) {
+            price = new double[length];
+            dividend = new double[length];
+            rate = new double[length];
+            gross = new double[length];
+            net = new double[length];
+        }
+
+        int i = 0;
+        for (Company company : companies) {
+            price[i] = company.priceMicros;
+            dividend[i] = company.dividendPerShareMicros;
+            rate[i] = tax.rate(company.marketHref);
+            i++;
+        }
+
+        compute(price, dividend, rate, gross, net, length);
+
+        i = 0;
+        for (Company company : companies) {
+            company.withholdingRate = rate[i];
+            company.grossYield = gross[i];
+            company.netYield = net[i];
+            i++;
+        }
+
+        computedVersion = version;
+        computedTaxVersion = tax.getVersion();
+        return true;
+    }
+}
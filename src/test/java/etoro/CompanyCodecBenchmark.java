@@ -0,0 +1,145 @@
+package etoro;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares {@link CompanyModule} against plain databind reflection on a companies.json with
+ * {@code -Dbenchmark.companies} entries (100k by default). Run with {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class CompanyCodecBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    /** The Company shape databind (de)serialized before the codec. */
+    public static class DatabindCompany {
+        public String name;
+        public String fullName;
+        public String sector;
+        @JsonFormat(pattern = "dd MMM yyyy")
+        public Date exDividendDate;
+        @JsonFormat(pattern = "dd MMM yyyy")
+        public Date dividendDate;
+        public float price;
+        public String marketHref;
+        public float dividendPerShare;
+        public BigDecimal marketCap;
+        public Set<String> tags;
+        public List<DatabindEvent> dividendEvents;
+    }
+
+    public static class DatabindEvent {
+        @JsonFormat(pattern = "dd MMM yyyy")
+        public Date exDividendDate;
+        @JsonFormat(pattern = "dd MMM yyyy")
+        public Date dividendDate;
+        public float dividendPerShare;
+    }
+
+    @Test
+    void codecAgainstDatabind(@TempDir Path directory) throws Exception {
+        int count = Integer.getInteger("benchmark.companies", 100_000);
+        Map<String, Company> companies = companies(count);
+        Map<String, DatabindCompany> databindCompanies = new LinkedHashMap<>();
+        companies.forEach((key, company) -> databindCompanies.put(key, databindCompany(company)));
+
+        ObjectMapper codec = new ObjectMapper().registerModule(new CompanyModule());
+        ObjectMapper databind = new ObjectMapper();
+        File codecFile = directory.resolve("codec.json").toFile();
+        File databindFile = directory.resolve("databind.json").toFile();
+
+        long[] codecWrite = new long[ROUNDS], codecRead = new long[ROUNDS];
+        long[] databindWrite = new long[ROUNDS], databindRead = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            codec.writeValue(codecFile, companies);
+            codecWrite[round] = System.nanoTime() - start;
+            start = System.nanoTime();
+            Map<String, Company> read = codec.readValue(codecFile, new TypeReference<Map<String, Company>>() {});
+            codecRead[round] = System.nanoTime() - start;
+            assertEquals(count, read.size());
+
+            start = System.nanoTime();
+            databind.writeValue(databindFile, databindCompanies);
+            databindWrite[round] = System.nanoTime() - start;
+            start = System.nanoTime();
+            Map<String, DatabindCompany> readBack = databind.readValue(databindFile, new TypeReference<Map<String, DatabindCompany>>() {});
+            databindRead[round] = System.nanoTime() - start;
+            assertEquals(count, readBack.size());
+        }
+
+        System.out.printf("%,d companies, median of %d rounds%n", count, ROUNDS);
+        System.out.printf("%-10s %10s %10s %12s%n", "", "write ms", "read ms", "file bytes");
+        System.out.printf("%-10s %10.1f %10.1f %,12d%n", "codec", median(codecWrite), median(codecRead), codecFile.length());
+        System.out.printf("%-10s %10.1f %10.1f %,12d%n", "databind", median(databindWrite), median(databindRead), databindFile.length());
+    }
+
+    static Map<String, Company> companies(int count) {
+        Random random = new Random(42);
+        String[] sectors = {"Financials", "Energy", "Utilities", "Industrials", "Health Care"};
+        long firstDay = LocalDate.of(2031, 1, 1).toEpochDay();
+        Map<String, Company> companies = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            LocalDate exDividend = LocalDate.ofEpochDay(firstDay + random.nextInt(365));
+            Company company = new Company.Builder("C" + i, "Company " + i + " plc")
+                    .sector(sectors[i % sectors.length])
+                    .exDividendDate(exDividend)
+                    .dividendDate(exDividend.plusDays(14))
+                    .priceMicros(1_000_000 + random.nextInt(500_000_000))
+                    .dividendPerShareMicros(random.nextInt(5_000_000))
+                    .marketCap(1_000_000L * (1 + random.nextInt(1_000_000)))
+                    .marketHref("/markets/c" + i)
+                    .addTag("NEW")
+                    .build();
+            companies.put(company.fullName, company);
+        }
+        return companies;
+    }
+
+    private static DatabindCompany databindCompany(Company company) {
+        DatabindCompany databindCompany = new DatabindCompany();
+        databindCompany.name = company.name;
+        databindCompany.fullName = company.fullName;
+        databindCompany.sector = company.sector;
+        databindCompany.exDividendDate = date(company.exDividendEpochDay);
+        databindCompany.dividendDate = date(company.dividendEpochDay);
+        databindCompany.price = (float) company.getPrice();
+        databindCompany.marketHref = company.marketHref;
+        databindCompany.dividendPerShare = (float) company.getDividendPerShare();
+        databindCompany.marketCap = BigDecimal.valueOf(company.marketCap);
+        databindCompany.tags = company.tags;
+        databindCompany.dividendEvents = new ArrayList<>();
+        for (DividendEvent event : company.dividendEvents) {
+            DatabindEvent databindEvent = new DatabindEvent();
+            databindEvent.exDividendDate = date(event.exDividendEpochDay());
+            databindEvent.dividendDate = date(event.dividendEpochDay());
+            databindEvent.dividendPerShare = (float) Money.toDouble(event.dividendPerShareMicros());
+            databindCompany.dividendEvents.add(databindEvent);
+        }
+        return databindCompany;
+    }
+
+    private static Date date(long epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
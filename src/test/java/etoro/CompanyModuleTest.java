@@ -0,0 +1,111 @@
+package etoro;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompanyModuleTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new CompanyModule());
+    private static final TypeReference<Map<String, Company>> COMPANIES = new TypeReference<>() {};
+
+    @Test
+    void roundTripKeepsEveryPersistedField() throws Exception {
+        Company company = new Company.Builder("ACME", "Acme Corp")
+                .sector("Industrials")
+                .exDividendDate(LocalDate.of(2031, 1, 5))
+                .dividendDate(LocalDate.of(2031, 1, 20))
+                .priceMicros(12_345_678)
+                .dividendPerShareMicros(100_000)
+                .marketCap(3_450_000_000_000L)
+                .marketHref("/markets/acme")
+                .addTags(List.of("NEW", "favourite"))
+                .build();
+        company.mergeDividendEvents(List.of(new DividendEvent(LocalDate.of(2031, 4, 5).toEpochDay(),
+                LocalDate.of(2031, 4, 20).toEpochDay(), 250_000)), LocalDate.of(2031, 1, 1).toEpochDay());
+
+        String json = objectMapper.writeValueAsString(Map.of(company.fullName, company));
+        Company read = objectMapper.readValue(json, COMPANIES).get("Acme Corp");
+
+        assertEquals(company.name, read.name);
+        assertEquals(company.fullName, read.fullName);
+        assertEquals(company.sector, read.sector);
+        assertEquals(company.exDividendEpochDay, read.exDividendEpochDay);
+        assertEquals(company.dividendEpochDay, read.dividendEpochDay);
+        assertEquals(company.priceMicros, read.priceMicros);
+        assertEquals(company.dividendPerShareMicros, read.dividendPerShareMicros);
+        assertEquals(company.marketCap, read.marketCap);
+        assertEquals(company.marketHref, read.marketHref);
+        assertEquals(company.tags, read.tags);
+        assertEquals(company.dividendEvents, read.dividendEvents);
+    }
+
+    @Test
+    void readsLegacyFileWithExponentMarketCapAndFloatPrices() throws Exception {
+        String json = """
+                {"Acme Corp": {"name": "ACME", "fullName": "Acme Corp", "sector": "Industrials",
+                  "exDividendDate": "05 Mar 2031", "dividendDate": "20 Mar 2031",
+                  "price": 27.459999, "marketHref": "/markets/acme", "dividendPerShare": 0.1,
+                  "marketCap": 3.45E+12, "tags": ["NEW"], "unknownField": {"nested": [1, 2]}}}
+                """;
+        Company read = objectMapper.readValue(json, COMPANIES).get("Acme Corp");
+
+        assertEquals(3_450_000_000_000L, read.marketCap);
+        assertEquals(27_459_999, read.priceMicros);
+        assertEquals(100_000, read.dividendPerShareMicros);
+        assertEquals(LocalDate.of(2031, 3, 5).toEpochDay(), read.exDividendEpochDay);
+        assertEquals(Set.of("NEW"), read.tags);
+        // Files without dividendEvents get one event from the top-level fields
+        assertEquals(List.of(DividendEvent.of(read)), read.dividendEvents);
+    }
+
+    @Test
+    void readsNullsAsUnset() throws Exception {
+        String json = """
+                {"Acme Corp": {"name": "ACME", "fullName": "Acme Corp", "sector": null, "marketCap": null,
+                  "exDividendDate": "05 Mar 2031", "dividendDate": "20 Mar 2031", "price": 1, "dividendPerShare": 0}}
+                """;
+        Company read = objectMapper.readValue(json, COMPANIES).get("Acme Corp");
+
+        assertNull(read.sector);
+        assertEquals(0, read.marketCap);
+        assertEquals(Money.ONE, read.priceMicros);
+    }
+
+    @Test
+    void formatsAndParsesDatesAcrossYears() {
+        for (long day = LocalDate.of(1999, 12, 25).toEpochDay(); day <= LocalDate.of(2032, 1, 10).toEpochDay(); day += 3) {
+            String text = CompanyModule.formatDate(day);
+            assertEquals(LocalDate.ofEpochDay(day).format(java.time.format.DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.ENGLISH)), text);
+            assertEquals(day, CompanyModule.parseDate(text));
+        }
+        assertEquals(LocalDate.of(2031, 3, 5).toEpochDay(), CompanyModule.parseDate("05 MAR 2031"));
+    }
+
+    @Test
+    void parsesMonthNamesWrittenByDatabindInTheDefaultLocale() {
+        Locale original = Locale.getDefault();
+        try {
+            for (Locale locale : List.of(Locale.GERMANY, Locale.FRANCE, new Locale("pl", "PL"))) {
+                Locale.setDefault(locale);
+                // The format databind's @JsonFormat(pattern = "dd MMM yyyy") produced for java.util.Date
+                SimpleDateFormat databindFormat = new SimpleDateFormat("dd MMM yyyy");
+                databindFormat.setTimeZone(TimeZone.getTimeZone(ZoneOffset.UTC));
+                for (int month = 1; month <= 12; month++) {
+                    LocalDate date = LocalDate.of(2031, month, 5);
+                    String text = databindFormat.format(Date.from(date.atStartOfDay(ZoneOffset.UTC).toInstant()));
+                    assertEquals(date.toEpochDay(), CompanyModule.parseDate(text), locale + " " + text);
+                }
+            }
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package etoro;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaLogTest {
+
+    @TempDir
+    Path directory;
+
+    /** Runs one refresh that adds {@code added}. */
+    private static void refresh(DeltaLog log, String... added) {
+        log.refreshStarted(Map.of());
+        for (String fullName : added)
+            log.companyUpdated(Fixtures.company(fullName, Money.ONE));
+        log.refreshFinished();
+    }
+
+    private List<Long> sequences(Path file, long after) throws Exception {
+        List<Long> sequences = new ArrayList<>();
+        DeltaLog.readFrom(file, after, record -> sequences.add(record.path("seq").asLong()));
+        return sequences;
+    }
+
+    @Test
+    void recordsScrapedRowsUnaffectedByOtherListeners() throws Exception {
+        Path fixture = Fixtures.copy("primary.json", directory);
+        Path file = directory.resolve("companies.delta.ndjson");
+        System.setProperty("dividend.companiesFile", directory.resolve("companies.json").toString());
+        try {
+            EtoroScraper scraper = new EtoroScraper(List.of(new FileDividendSource(fixture)), new SourceMerger());
+            // Like the client, which applies favourites to the rows it receives
+            scraper.addRefreshListener(new RefreshListener() {
+                @Override
+                public void companyUpdated(Company company) {
+                    company.addTag(UserStateStore.FAVOURITE);
+                }
+            });
+            scraper.addRefreshListener(new DeltaLog(file));
+            scraper.loadCompanies();
+        } finally {
+            System.clearProperty("dividend.companiesFile");
+        }
+
+        List<JsonNode> records = new ArrayList<>();
+        DeltaLog.readFrom(file, 0, records::add);
+        assertEquals(2, records.size());
+        for (JsonNode record : records)
+            assertEquals("[\"NEW\"]", record.path("record").path("tags").toString(), record.path("company").asText());
+    }
+
+    @Test
+    void continuesSequenceAcrossRuns() throws Exception {
+        Path file = directory.resolve("companies.delta.ndjson");
+        refresh(new DeltaLog(file), "Acme Corp", "Beta Holdings");
+
+        DeltaLog next = new DeltaLog(file);
+        assertEquals(2, next.getSequence());
+        refresh(next, "Gamma Ltd");
+        assertEquals(List.of(2L, 3L), sequences(file, 1));
+    }
+
+    @Test
+    void truncatesATornLastRecordBeforeAppending() throws Exception {
+        Path file = directory.resolve("companies.delta.ndjson");
+        refresh(new DeltaLog(file), "Acme Corp", "Beta Holdings");
+        long complete = Files.size(file);
+        Files.writeString(file, "{\"seq\":3,\"refreshedAt\":\"2031-01-", StandardOpenOption.APPEND);
+
+        DeltaLog recovered = new DeltaLog(file);
+        assertEquals(2, recovered.getSequence());
+        assertEquals(complete, Files.size(file));
+
+        refresh(recovered, "Gamma Ltd");
+        assertEquals(List.of(1L, 2L, 3L), sequences(file, 0));
+    }
+
+    @Test
+    void skipsSeveralUnparseableTrailingLines() throws Exception {
+        Path file = directory.resolve("companies.delta.ndjson");
+        refresh(new DeltaLog(file), "Acme Corp");
+        Files.writeString(file, "{\"seq\":2,\"ref\n\n{\"op\":\"added\"}\n{\"se", StandardOpenOption.APPEND);
+
+        DeltaLog recovered = new DeltaLog(file);
+        assertEquals(1, recovered.getSequence());
+        refresh(recovered, "Beta Holdings");
+        assertEquals(List.of(1L, 2L), sequences(file, 0));
+    }
+
+    @Test
+    void completesARecordMissingItsNewline() throws Exception {
+        Path file = directory.resolve("companies.delta.ndjson");
+        refresh(new DeltaLog(file), "Acme Corp");
+        String content = Files.readString(file);
+        Files.writeString(file, content.substring(0, content.length() - 1));
+
+        DeltaLog recovered = new DeltaLog(file);
+        assertEquals(1, recovered.getSequence());
+        refresh(recovered, "Beta Holdings");
+        assertEquals(List.of(1L, 2L), sequences(file, 0));
+    }
+
+    @Test
+    void discardsAFileWithoutCompleteRecords() throws Exception {
+        Path file = directory.resolve("companies.delta.ndjson");
+        Files.writeString(file, "{\"seq\":1,\"refr");
+
+        DeltaLog recovered = new DeltaLog(file);
+        assertEquals(0, recovered.getSequence());
+        refresh(recovered, "Acme Corp");
+        assertEquals(List.of(1L), sequences(file, 0));
+    }
+
+    @Test
+    void readerSkipsARecordStillBeingWritten() throws Exception {
+        Path file = directory.resolve("companies.delta.ndjson");
+        refresh(new DeltaLog(file), "Acme Corp");
+        Files.write(file, "{\"seq\":2,\"company\":\"Be".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<JsonNode> records = new ArrayList<>();
+        DeltaLog.readFrom(file, 0, records::add);
+        assertEquals(1, records.size());
+        assertEquals("added", records.get(0).path("op").asText());
+    }
+}
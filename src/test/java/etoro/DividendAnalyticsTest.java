@@ -0,0 +1,113 @@
+package etoro;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DividendAnalyticsTest {
+
+    private static final List<String> SECTORS = List.of("Energy", "Industrials", "Utilities", "");
+
+    private static List<Company> randomCompanies(int count, long seed) {
+        Random random = new Random(seed);
+        LocalDate start = LocalDate.of(2031, 1, 1);
+        List<Company> companies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDate exDividend = start.plusDays(random.nextInt(365));
+            companies.add(new Company.Builder("C" + i, "Company " + i)
+                    .sector(SECTORS.get(random.nextInt(SECTORS.size())))
+                    .exDividendDate(exDividend)
+                    .dividendDate(exDividend.plusDays(random.nextInt(30)))
+                    // Every tenth company is unpriced; the rest have distinct yields, so rankings have no ties
+                    .priceMicros(i % 10 == 0 ? 0 : (100 + i) * Money.ONE)
+                    .dividendPerShareMicros(1 + random.nextInt(5_000_000))
+                    .build());
+        }
+        return companies;
+    }
+
+    @Test
+    void parallelRollupsMatchASequentialReduction() {
+        // Well above the split threshold, so the rollup forks
+        List<Company> companies = randomCompanies(20_000, 7);
+        int topK = 3;
+        DividendAnalytics.Report report = new DividendAnalytics(new ForkJoinPool(4), topK).analyse(companies, 1);
+
+        Map<LocalDate, Long> weekly = new TreeMap<>();
+        Map<YearMonth, Long> monthly = new TreeMap<>();
+        Map<String, List<Company>> bySector = new TreeMap<>();
+        for (Company company : companies) {
+            for (DividendEvent event : company.dividendEvents) {
+                LocalDate payment = LocalDate.ofEpochDay(event.dividendEpochDay());
+                weekly.merge(payment.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)),
+                        event.dividendPerShareMicros(), Long::sum);
+                monthly.merge(YearMonth.from(payment), event.dividendPerShareMicros(), Long::sum);
+            }
+            bySector.computeIfAbsent(company.sector.isBlank() ? "Unknown" : company.sector, s -> new ArrayList<>())
+                    .add(company);
+        }
+
+        assertEquals(weekly.keySet(), report.weeklyIncome().keySet());
+        weekly.forEach((week, income) -> assertEquals(Money.toDouble(income), report.weeklyIncome().get(week)));
+        assertEquals(monthly.keySet(), report.monthlyIncome().keySet());
+        monthly.forEach((month, income) -> assertEquals(Money.toDouble(income), report.monthlyIncome().get(month)));
+
+        assertEquals(bySector.keySet(), report.sectors().keySet());
+        bySector.forEach((sector, sectorCompanies) -> {
+            List<Company> priced = sectorCompanies.stream().filter(c -> c.priceMicros > 0)
+                    .sorted(Comparator.comparingDouble(Company::getDividendYield))
+                    .collect(Collectors.toList());
+            double[] yields = priced.stream().mapToDouble(Company::getDividendYield).toArray();
+            DividendAnalytics.SectorStats stats = report.sectors().get(sector);
+
+            assertEquals(sectorCompanies.size(), stats.companies(), sector);
+            assertEquals(priced.size(), stats.priced(), sector);
+            assertEquals(yields[0], stats.minYield(), sector);
+            assertEquals(yields[yields.length - 1], stats.maxYield(), sector);
+            double median = yields.length % 2 == 1
+                    ? yields[yields.length / 2]
+                    : (yields[yields.length / 2 - 1] + yields[yields.length / 2]) / 2;
+            assertEquals(median, stats.medianYield(), sector);
+            // Partial sums are added in a different order
+            assertEquals(Arrays.stream(yields).sum() / yields.length, stats.meanYield(), 1e-12, sector);
+
+            List<String> top = new ArrayList<>();
+            for (int i = priced.size() - 1; i >= priced.size() - topK; i--)
+                top.add(priced.get(i).fullName);
+            assertEquals(top, stats.topByYield().stream().map(DividendAnalytics.RankedCompany::fullName).toList(), sector);
+        });
+    }
+
+    @Test
+    void cachedReportIsReplacedWhenTheVersionChanges() {
+        List<Company> companies = new ArrayList<>(randomCompanies(100, 11));
+        DividendAnalytics analytics = new DividendAnalytics(new ForkJoinPool(2), 5);
+
+        DividendAnalytics.Report first = analytics.analyse(companies, 1);
+        assertSame(first, analytics.analyse(companies, 1));
+
+        Company added = new Company.Builder("NEW", "New Sector Co")
+                .sector("Materials")
+                .exDividendDate(LocalDate.of(2031, 6, 1))
+                .dividendDate(LocalDate.of(2031, 6, 15))
+                .priceMicros(10 * Money.ONE)
+                .dividendPerShareMicros(Money.ONE)
+                .build();
+        companies.add(added);
+        // Same version: the snapshot is assumed unchanged
+        assertFalse(analytics.analyse(companies, 1).sectors().containsKey("Materials"));
+
+        DividendAnalytics.Report second = analytics.analyse(companies, 2);
+        assertNotSame(first, second);
+        assertEquals(2, second.version());
+        assertEquals(1, second.sectors().get("Materials").companies());
+    }
+}
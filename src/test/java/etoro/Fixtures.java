@@ -0,0 +1,40 @@
+package etoro;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Test data shared by the test classes.
+ */
+final class Fixtures {
+
+    private Fixtures() {}
+
+    /**
+     * A company going ex-dividend in 30 days, paying 1.00 two weeks later.
+     */
+    static Company company(String fullName, long priceMicros) {
+        LocalDate exDividend = LocalDate.now().plusDays(30);
+        return new Company.Builder(fullName, fullName)
+                .exDividendDate(exDividend)
+                .dividendDate(exDividend.plusDays(14))
+                .priceMicros(priceMicros)
+                .dividendPerShareMicros(Money.ONE)
+                .build();
+    }
+
+    /**
+     * Copies {@code /fixtures/<name>} from the test resources into {@code directory}, so tests can modify it.
+     */
+    static Path copy(String name, Path directory) throws IOException {
+        Path copy = directory.resolve(name);
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            Files.copy(Objects.requireNonNull(in, name), copy);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,80 @@
+package etoro;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares {@link NumberParser} against cleaning the text and going through {@link BigDecimal}, on
+ * {@code -Dbenchmark.numbers} scraped-looking prices and market caps (1M by default). Run with
+ * {@code gradle benchmark}.
+ */
+@Tag("benchmark")
+class NumberParserBenchmark {
+
+    private static final int ROUNDS = 7;
+
+    @Test
+    void parserAgainstBigDecimal() {
+        int count = Integer.getInteger("benchmark.numbers", 1_000_000);
+        Random random = new Random(42);
+        String[] prices = new String[count];
+        String[] marketCaps = new String[count];
+        String[] suffixes = {"K", "M", "B", "T"};
+        for (int i = 0; i < count; i++) {
+            prices[i] = String.format(Locale.ROOT, "%,.2f", random.nextInt(100_000_000) / 100.0);
+            marketCaps[i] = String.format(Locale.ROOT, "%.2f%s", random.nextInt(100_000) / 100.0, suffixes[random.nextInt(suffixes.length)]);
+        }
+
+        long[] parser = new long[ROUNDS];
+        long[] bigDecimal = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long parserSum = 0;
+            for (int i = 0; i < count; i++)
+                parserSum += NumberParser.parseMicros(prices[i]) + NumberParser.parseWhole(marketCaps[i]);
+            parser[round] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long bigDecimalSum = 0;
+            for (int i = 0; i < count; i++)
+                bigDecimalSum += bigDecimalMicros(prices[i]) + bigDecimalMarketCap(marketCaps[i]);
+            bigDecimal[round] = System.nanoTime() - start;
+
+            assertEquals(bigDecimalSum, parserSum);
+        }
+
+        System.out.printf("%,d prices and %,d market caps, best of %d rounds%n", count, count, ROUNDS);
+        System.out.printf("%-12s %10s %10s%n", "", "total ms", "ns/number");
+        System.out.printf("%-12s %10.1f %10.1f%n", "parser", best(parser) / 1e6, best(parser) / (2.0 * count));
+        System.out.printf("%-12s %10.1f %10.1f%n", "BigDecimal", best(bigDecimal) / 1e6, best(bigDecimal) / (2.0 * count));
+    }
+
+    private static long bigDecimalMicros(String text) {
+        return new BigDecimal(text.replace(",", "")).setScale(Money.SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static long bigDecimalMarketCap(String text) {
+        int exponent = switch (text.charAt(text.length() - 1)) {
+            case 'K' -> 3;
+            case 'M' -> 6;
+            case 'B' -> 9;
+            default -> 12;
+        };
+        return new BigDecimal(text.substring(0, text.length() - 1)).scaleByPowerOfTen(exponent)
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static long best(long[] nanos) {
+        long best = Long.MAX_VALUE;
+        for (long value : nanos)
+            best = Math.min(best, value);
+        return best;
+    }
+}
@@ -0,0 +1,94 @@
+package etoro;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberParserTest {
+
+    /** What the parser must agree with: the exact decimal value, rounded half up to the scale. */
+    private static long expected(BigDecimal value, int scale) {
+        return value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    @Test
+    void matchesBigDecimalHalfUpOnRandomValues() {
+        Random random = new Random(7);
+        for (int n = 0; n < 200_000; n++) {
+            // Up to 17 significant digits, so the exact value always fits the parser's mantissa
+            BigDecimal value = BigDecimal.valueOf(random.nextLong() % 100_000_000_000_000_000L, random.nextInt(16));
+            int scale = random.nextBoolean() ? Money.SCALE : 0;
+            if (value.abs().setScale(scale, RoundingMode.HALF_UP).precision() > 18)
+                continue;
+
+            String plain = value.toPlainString();
+            assertEquals(expected(value, scale), NumberParser.parseScaled(plain, 0, plain.length(), scale), plain);
+            // Exponent form as written by BigDecimal.toString, e.g. 1.2E+12 or 3.4E-7
+            String scientific = value.stripTrailingZeros().toString();
+            assertEquals(expected(value, scale), NumberParser.parseScaled(scientific, 0, scientific.length(), scale), scientific);
+        }
+    }
+
+    @Test
+    void matchesBigDecimalHalfUpAtRoundingBoundaries() {
+        String[] values = {"0.0000005", "-0.0000005", "0.00000049999", "1.0000015", "2.4999995", "0.5", "-0.5",
+                "1.5", "2.5", "999999.9999995", "0.000000", "-0", "123456789012.345678"};
+        for (String value : values) {
+            for (int scale : new int[]{0, 2, Money.SCALE}) {
+                assertEquals(expected(new BigDecimal(value), scale),
+                        NumberParser.parseScaled(value, 0, value.length(), scale), value + " at scale " + scale);
+            }
+        }
+    }
+
+    @Test
+    void readsScrapedFormats() {
+        assertEquals(1_230_000_000L, NumberParser.parseWhole("1.23B"));
+        assertEquals(850_000, NumberParser.parseWhole("850,000"));
+        assertEquals(4_500_000_000_000L, NumberParser.parseWhole("4.5 T"));
+        assertEquals(12_000, NumberParser.parseWhole("12k"));
+        assertEquals(1_234_500_000, NumberParser.parseMicros("$1,234.50"));
+        assertEquals(12_000_000, NumberParser.parseMicros("US$ 12"));
+        assertEquals(12_000_000, NumberParser.parseMicros("12 USD"));
+        assertEquals(1_200_000_000L, NumberParser.parseWhole("1.2B usd"));
+        assertEquals(3_450_000_000_000L, NumberParser.parseWhole("3.45E+12"));
+        assertEquals(12_500_000, NumberParser.parseMicros("12.5%"));
+        assertEquals(-1_500_000, NumberParser.parseMicros("\u22121.5"));
+        assertEquals(1_234_000_000, NumberParser.parseMicros("1\u00a0234"));
+        assertEquals(1_234_000_000, NumberParser.parseMicros("1'234 CHF"));
+        assertEquals(500_000, NumberParser.parseMicros(".5"));
+        assertEquals(7_000_000, NumberParser.parseMicros("\u20ac 7"));
+    }
+
+    @Test
+    void parsesOnlyTheRequestedRange() {
+        String text = "price: 12.34 USD";
+        assertEquals(12_340_000, NumberParser.parseScaled(text, 7, 12, Money.SCALE));
+    }
+
+    @Test
+    void rejectsWordsInsteadOfDroppingTheirMagnitude() {
+        for (String text : new String[]{"1.5 Bn", "2 mln", "2 Mio", "1.2 bln", "3 Tn", "12 pts", "1.5 Billion",
+                "12 USDX", "abc 12", "Mio 2", "12 US"}) {
+            assertThrows(NumberFormatException.class, () -> NumberParser.parseWhole(text), text);
+        }
+    }
+
+    @Test
+    void rejectsMalformedNumbers() {
+        for (String text : new String[]{"", " ", "-", "$", "1..2", "1.2.3", "12#", "1e", "1,", "1 2 3 ?"}) {
+            assertThrows(NumberFormatException.class, () -> NumberParser.parseMicros(text), text);
+        }
+    }
+
+    @Test
+    void rejectsValuesOutsideLong() {
+        assertThrows(NumberFormatException.class, () -> NumberParser.parseWhole("9.3E+18"));
+        assertThrows(NumberFormatException.class, () -> NumberParser.parseMicros("10000000000000 USD"));
+        assertEquals(Long.MAX_VALUE / Money.ONE * Money.ONE, NumberParser.parseMicros(Long.toString(Long.MAX_VALUE / Money.ONE)));
+    }
+}
@@ -0,0 +1,87 @@
+package etoro;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedViewTest {
+
+    private static final int PAGE_SIZE = 25;
+
+    /**
+     * Rows drawn from few distinct values, so sort keys tie often, some market caps are unknown (0),
+     * some sectors are missing and some full names repeat.
+     */
+    private static List<Company> randomCompanies(int count, long seed) {
+        Random random = new Random(seed);
+        String[] sectors = {"Energy", "utilities", "Utilities", null};
+        List<Company> companies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String fullName = "Company " + random.nextInt(count / 2);
+            companies.add(new Company.Builder(fullName, fullName)
+                    .sector(sectors[random.nextInt(sectors.length)])
+                    .priceMicros(random.nextInt(5) * Money.ONE)
+                    .marketCap(random.nextInt(3) * 1_000_000_000L)
+                    .build());
+        }
+        return companies;
+    }
+
+    private static void assertPage(List<Company> sorted, Comparator<Company> comparator, List<Company> page, int pageIndex) {
+        int from = Math.min(pageIndex * PAGE_SIZE, sorted.size());
+        List<Company> expected = sorted.subList(from, Math.min(from + PAGE_SIZE, sorted.size()));
+        assertEquals(expected.size(), page.size(), "page " + pageIndex);
+        // Rows equal under the comparator may come in any order
+        for (int i = 0; i < page.size(); i++)
+            assertEquals(0, comparator.compare(expected.get(i), page.get(i)), "page " + pageIndex + " row " + i);
+    }
+
+    @Test
+    void pagesMatchAFullSort() {
+        List<String> specs = List.of("sector asc, marketcap desc", "marketcap asc", "price desc, sector desc", "name");
+        long seed = 0;
+        for (String spec : specs) {
+            // 1003 rows leave a last partial page of 3
+            List<Company> companies = randomCompanies(1003, ++seed);
+            Comparator<Company> comparator = SortSpec.parse(spec).getComparator();
+            List<Company> sorted = new ArrayList<>(companies);
+            sorted.sort(comparator);
+            int pages = (companies.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+
+            PagedView firstPageFirst = new PagedView(companies, comparator);
+            assertPage(sorted, comparator, firstPageFirst.page(0, PAGE_SIZE), 0);
+            assertPage(sorted, comparator, firstPageFirst.page(1, PAGE_SIZE), 1);
+
+            PagedView deepPageFirst = new PagedView(companies, comparator);
+            assertPage(sorted, comparator, deepPageFirst.page(29, PAGE_SIZE), 29);
+            assertPage(sorted, comparator, deepPageFirst.page(pages - 1, PAGE_SIZE), pages - 1);
+            assertEquals(3, deepPageFirst.page(pages - 1, PAGE_SIZE).size());
+
+            // Every page in random order, then check no row was lost or duplicated
+            PagedView randomOrder = new PagedView(companies, comparator);
+            List<Integer> order = new ArrayList<>();
+            for (int page = 0; page < pages; page++)
+                order.add(page);
+            Collections.shuffle(order, new Random(seed));
+            for (int page : order)
+                assertPage(sorted, comparator, randomOrder.page(page, PAGE_SIZE), page);
+
+            Set<Company> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int page = 0; page < pages; page++)
+                seen.addAll(randomOrder.page(page, PAGE_SIZE));
+            assertEquals(companies.size(), seen.size(), spec);
+        }
+    }
+
+    @Test
+    void pagesPastTheEndAreEmpty() {
+        Comparator<Company> comparator = SortSpec.parse("price").getComparator();
+        assertEquals(List.of(), new PagedView(List.of(), comparator).page(0, PAGE_SIZE));
+
+        PagedView view = new PagedView(randomCompanies(10, 1), comparator);
+        assertEquals(10, view.page(0, PAGE_SIZE).size());
+        assertEquals(List.of(), view.page(1, PAGE_SIZE));
+    }
+}
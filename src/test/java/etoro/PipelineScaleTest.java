@@ -0,0 +1,135 @@
+package etoro;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the calendar, merge, crawl and save stages, a cached reload and update, and the client's
+ * filter, sort and render stages against {@link SyntheticEtoroServer} at each of the
+ * {@code -Dscale.sizes} (10k, 100k and 1M companies by default). Per-stage {@link PipelineMetrics}
+ * for every size go to {@code -Dscale.report} (build/reports/scale/scale-report.json by default).
+ * A size that fails, e.g. by running out of heap, is reported with the stage it failed after,
+ * and larger sizes are skipped. Run with {@code gradle scaleTest}.
+ */
+@Tag("scale")
+class PipelineScaleTest {
+
+    public record SizeReport(int companies, long maxHeapBytes, String failure, List<PipelineMetrics.StageReport> stages) {}
+
+    private static final String WATCH_TAG = "watch";
+    /** Tag filter and sort spec for each view the client renders. */
+    private static final String[][] VIEWS = {
+            {"NONE", "netyield desc"},
+            {WATCH_TAG, "marketcap desc"},
+            {"NEW", "sector asc, yield desc, name asc"}
+    };
+
+    @Test
+    void pipelineAtEachSize() throws Exception {
+        assertTrue(PipelineMetrics.isEnabled(), "run with -Dpipeline.metrics=<file>, e.g. through gradle scaleTest");
+        Path workDir = Files.createDirectories(Path.of(System.getProperty("scale.workDir", "build/scale")));
+        File reportFile = new File(System.getProperty("scale.report", "build/reports/scale/scale-report.json"));
+        Files.createDirectories(reportFile.getAbsoluteFile().toPath().getParent());
+        ObjectMapper reportMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        List<SizeReport> sizeReports = new ArrayList<>();
+        try (SyntheticEtoroServer server = new SyntheticEtoroServer()) {
+            for (String size : System.getProperty("scale.sizes", "10000,100000,1000000").split(",")) {
+                int companies = Integer.parseInt(size.strip());
+                server.setCompanies(companies);
+                int firstStage = PipelineMetrics.reports().size();
+                String failure = null;
+                try {
+                    run(server, companies, workDir.resolve("companies-" + companies + ".json"));
+                } catch (Throwable e) {
+                    failure = e.toString();
+                }
+                List<PipelineMetrics.StageReport> stages = PipelineMetrics.reports();
+                sizeReports.add(new SizeReport(companies, Runtime.getRuntime().maxMemory(), failure,
+                        stages.subList(firstStage, stages.size())));
+                reportMapper.writeValue(reportFile, sizeReports);
+                printSummary(sizeReports.get(sizeReports.size() - 1));
+                if (failure != null)
+                    break;
+                System.gc();
+            }
+        }
+        assertNull(sizeReports.get(0).failure(), "the smallest size must complete");
+    }
+
+    private static void run(SyntheticEtoroServer server, int companies, Path companiesFile) throws Exception {
+        Files.deleteIfExists(companiesFile);
+        System.setProperty("dividend.companiesFile", companiesFile.toString());
+        System.setProperty("dividend.crawlTimeoutSeconds", System.getProperty("scale.crawlTimeoutSeconds", "3600"));
+        try {
+            // Extract: calendar, merge, crawl of every market page, save
+            EtoroScraper scraper = newScraper(server);
+            scraper.loadCompanies();
+            assertEquals(companies, scraper.companies.size());
+            assertEquals(companies, scraper.companies.values().stream().filter(company -> company.priceMicros > 0).count(),
+                    "every market page fetched");
+            scraper = null;
+
+            // Update: load the cache, calendar, merge, crawl of priced rows only, save
+            EtoroScraper updated = newScraper(server);
+            updated.loadCompanies();
+            assertEquals(companies, updated.companies.size());
+
+            int watched = 0;
+            for (Company company : updated.companies.values()) {
+                if (watched++ % 20 == 0)
+                    company.tags.add(WATCH_TAG);
+            }
+            drive(new Client(), updated);
+        } finally {
+            System.clearProperty("dividend.companiesFile");
+            System.clearProperty("dividend.crawlTimeoutSeconds");
+        }
+    }
+
+    private static EtoroScraper newScraper(SyntheticEtoroServer server) {
+        return new EtoroScraper(List.of(new EtoroSource(server.getUrl())), new SourceMerger());
+    }
+
+    /**
+     * Filters, sorts and renders the first and last page for a few views, the way a user paging
+     * through the table would. Console output is discarded.
+     */
+    private static void drive(Client client, EtoroScraper scraper) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream() {
+            @Override
+            public void write(byte[] bytes, int offset, int length) {}
+        }));
+        try {
+            client.showCompanies(scraper);
+            for (String[] view : VIEWS) {
+                client.setView(view[0], SortSpec.parse(view[1]));
+                client.printStockTable(0);
+                client.printStockTable(Math.max(0, client.getPageCount() - 1));
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static void printSummary(SizeReport report) {
+        System.out.printf("%,d companies%s%n", report.companies(), report.failure() == null ? "" : " FAILED: " + report.failure());
+        System.out.printf("  %-9s %10s %12s %10s %12s %8s %10s%n", "stage", "items", "wall ms", "alloc MB", "peak heap MB", "GCs", "pause ms");
+        for (PipelineMetrics.StageReport stage : report.stages())
+            System.out.printf("  %-9s %,10d %12.1f %10.1f %12.1f %8d %10.1f%n", stage.stage(), stage.items(), stage.wallMillis(),
+                    stage.allocatedBytes() / 1048576.0, stage.peakHeapBytes() / 1048576.0, stage.gcCount(), stage.gcPauseMillis());
+    }
+}
@@ -0,0 +1,47 @@
+package etoro;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortSpecTest {
+
+    private static Company company(String fullName, String sector, long priceMicros) {
+        return new Company.Builder(fullName, fullName).sector(sector).priceMicros(priceMicros).build();
+    }
+
+    @Test
+    void comparesKeysLeftToRightAndBreaksTiesByName() {
+        Company beta = company("Beta", "Energy", 2 * Money.ONE);
+        Company alpha = company("Alpha", "Energy", 2 * Money.ONE);
+        Company gamma = company("Gamma", "energy", 5 * Money.ONE);
+        Company delta = company("Delta", null, 9 * Money.ONE);
+        List<Company> companies = new ArrayList<>(List.of(delta, beta, gamma, alpha));
+
+        SortSpec spec = SortSpec.parse(" SECTOR asc ,price DESC");
+        companies.sort(spec.getComparator());
+
+        // Sectors compare case-insensitively and missing ones go last
+        assertEquals(List.of(gamma, alpha, beta, delta), companies);
+        assertEquals("sector asc, price desc", spec.getLabel());
+        assertEquals("Price", SortSpec.parse("price desc", "Price").getLabel());
+    }
+
+    @Test
+    void rejectsInvalidSpecs() {
+        assertEquals("Unknown sort key: volume",
+                assertThrows(IllegalArgumentException.class, () -> SortSpec.parse("price, volume desc")).getMessage());
+        assertEquals("Expected asc or desc after price",
+                assertThrows(IllegalArgumentException.class, () -> SortSpec.parse("price down")).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> SortSpec.parse("price desc asc"));
+        assertEquals("Empty sort spec",
+                assertThrows(IllegalArgumentException.class, () -> SortSpec.parse("")).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> SortSpec.parse(" , ,"));
+        assertEquals("Empty term in sort spec: price desc,, name asc",
+                assertThrows(IllegalArgumentException.class, () -> SortSpec.parse("price desc,, name asc")).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> SortSpec.parse("price desc,"));
+    }
+}
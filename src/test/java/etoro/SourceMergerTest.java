@@ -0,0 +1,159 @@
+package etoro;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceMergerTest {
+
+    @TempDir
+    Path directory;
+
+    private FileDividendSource primary;
+    private FileDividendSource secondary;
+
+    @BeforeEach
+    void copyFixtures() throws Exception {
+        primary = new FileDividendSource(Fixtures.copy("primary.json", directory));
+        secondary = new FileDividendSource(Fixtures.copy("secondary.json", directory));
+    }
+
+    private static SourceMerger.SourceResult fetch(DividendSource source) throws Exception {
+        return new SourceMerger.SourceResult(source, source.fetchCalendar(), source.getDataTimestamp());
+    }
+
+    private Map<String, SourceMerger.MergedRow> merge(SourceMerger merger) throws Exception {
+        Map<String, SourceMerger.MergedRow> rows = new HashMap<>();
+        for (SourceMerger.MergedRow row : merger.merge(List.of(fetch(primary), fetch(secondary))))
+            assertNull(rows.put(SourceMerger.key(row.company().fullName), row), "duplicate " + row.company().fullName);
+        return rows;
+    }
+
+    private static long day(int year, int month, int day) {
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    @Test
+    void matchesRowsOnNormalisedFullName() throws Exception {
+        Map<String, SourceMerger.MergedRow> rows = merge(new SourceMerger());
+
+        assertEquals(Set.of("acme corp", "beta holdings", "gamma ltd"), rows.keySet());
+        assertEquals("Acme Corp", rows.get("acme corp").company().fullName);
+    }
+
+    @Test
+    void sourceOrderIsTheDefaultPrecedenceAndMissingFieldsFallBack() throws Exception {
+        Map<String, SourceMerger.MergedRow> rows = merge(new SourceMerger());
+
+        Company acme = rows.get("acme corp").company();
+        assertEquals("ACME", acme.name);
+        assertEquals("/markets/acme", acme.marketHref);
+        assertSame(primary, rows.get("acme corp").detailSource());
+        // Blank in the primary fixture
+        assertEquals("Industrials", acme.sector);
+
+        Company beta = rows.get("beta holdings").company();
+        assertEquals("BETA", beta.name);
+        assertEquals("Energy", beta.sector);
+
+        Company gamma = rows.get("gamma ltd").company();
+        assertEquals("GAMMA", gamma.name);
+        assertSame(secondary, rows.get("gamma ltd").detailSource());
+    }
+
+    @Test
+    void configuredPrecedenceOverridesSourceOrderPerField() throws Exception {
+        SourceMerger merger = new SourceMerger()
+                .prefer("name", secondary.getName())
+                .prefer("marketHref", secondary.getName(), primary.getName());
+        Map<String, SourceMerger.MergedRow> rows = merge(merger);
+
+        Company beta = rows.get("beta holdings").company();
+        assertEquals("BETA.DE", beta.name);
+        assertEquals("/markets/beta.de", beta.marketHref);
+        assertSame(secondary, rows.get("beta holdings").detailSource());
+        // Not configured, so still in source order
+        assertEquals("Energy", beta.sector);
+    }
+
+    @Test
+    void staleSourceOnlyFillsFieldsFreshSourcesLack() throws Exception {
+        Files.setLastModifiedTime(directory.resolve("primary.json"),
+                FileTime.from(Instant.now().minus(primary.getFreshness()).minus(Duration.ofHours(1))));
+        Map<String, SourceMerger.MergedRow> rows = merge(new SourceMerger().prefer("name", primary.getName()));
+
+        Company beta = rows.get("beta holdings").company();
+        // Freshness outranks both source order and configured precedence
+        assertEquals("BETA.DE", beta.name);
+        assertEquals("/markets/beta.de", beta.marketHref);
+        assertSame(secondary, rows.get("beta holdings").detailSource());
+        // Blank in the fresh source
+        assertEquals("Energy", beta.sector);
+    }
+
+    @Test
+    void mergesDividendEventsAcrossSources() throws Exception {
+        Company acme = merge(new SourceMerger()).get("acme corp").company();
+
+        // The primary source has no payment date for the January event
+        assertEquals(List.of(
+                new DividendEvent(day(2031, 1, 5), day(2031, 1, 20), Money.ONE),
+                new DividendEvent(day(2031, 4, 5), day(2031, 4, 20), 1_250_000)), acme.dividendEvents);
+        assertEquals(DividendEvent.of(acme), acme.dividendEvents.get(0));
+    }
+
+    @Test
+    void keepsRegularAndSpecialDividendsOnTheSameExDividendDate() throws Exception {
+        Path regularAndSpecial = directory.resolve("special.json");
+        Files.writeString(regularAndSpecial, """
+                {
+                  "Delta Inc": {"name": "DELTA", "fullName": "Delta Inc", "marketHref": "/markets/delta",
+                    "exDividendDate": "01 Jun 2031", "dividendDate": "15 Jun 2031", "dividendPerShare": 1.0,
+                    "dividendEvents": [
+                      {"exDividendDate": "01 Jun 2031", "dividendDate": "15 Jun 2031", "dividendPerShare": 1.0},
+                      {"exDividendDate": "01 Jun 2031", "dividendDate": "01 Jan 1970", "dividendPerShare": 5.0}
+                    ]}
+                }
+                """);
+        Path special = directory.resolve("special-dated.json");
+        Files.writeString(special, """
+                {
+                  "Delta Inc": {"name": "DELTA", "fullName": "Delta Inc",
+                    "exDividendDate": "01 Jun 2031", "dividendDate": "16 Jun 2031", "dividendPerShare": 5.0}
+                }
+                """);
+        List<SourceMerger.MergedRow> rows = new SourceMerger().merge(List.of(
+                fetch(new FileDividendSource(regularAndSpecial)), fetch(new FileDividendSource(special))));
+
+        // The second source dates the special dividend only, so it must not fill in the regular one
+        List<DividendEvent> expected = List.of(
+                new DividendEvent(day(2031, 6, 1), day(2031, 6, 15), Money.ONE),
+                new DividendEvent(day(2031, 6, 1), day(2031, 6, 16), 5 * Money.ONE));
+        Company delta = rows.get(0).company();
+        assertEquals(expected, delta.dividendEvents);
+
+        // A refresh that still lists only the regular dividend for that date drops the cached special one
+        Company cached = new Company(delta);
+        assertTrue(cached.mergeDividendEvents(List.of(expected.get(0)), day(2031, 1, 1)));
+        assertEquals(List.of(expected.get(0)), cached.dividendEvents);
+        assertFalse(delta.mergeDividendEvents(expected, day(2031, 1, 1)));
+    }
+
+    @Test
+    void detailsComeFromTheSourceThatProvidedTheHref() throws Exception {
+        SourceMerger.MergedRow acme = merge(new SourceMerger()).get("acme corp");
+
+        assertEquals(0, acme.company().priceMicros);
+        assertEquals(new CompanyDetails(10_500_000, 2_000_000_000L), acme.detailSource().fetchDetails(acme.company()));
+    }
+}
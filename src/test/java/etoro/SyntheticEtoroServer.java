@@ -0,0 +1,147 @@
+package etoro;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process stand-in for eToro serving a generated dividend calendar of {@link #setCompanies(int)} rows
+ * and a market page per row, in the markup {@link EtoroSource} scrapes. Company {@code i} always gets the
+ * same name, dates, dividend, price and market cap, so runs at different sizes are comparable.
+ */
+class SyntheticEtoroServer implements AutoCloseable {
+
+    static final String[] SECTORS = {"Financials", "Energy", "Utilities", "Industrials", "Health Care",
+            "Real Estate", "Materials", "Consumer Staples", "Telecommunications", "Technology"};
+    private static final String[] EXCHANGES = {"", ".L", ".DE", ".PA", ".MI", ".AS", ".ST", ".HK"};
+    private static final String MARKETS = "/markets/";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16, runnable -> {
+        Thread thread = new Thread(runnable, "synthetic-etoro");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LocalDate firstExDividendDate = LocalDate.now().plusDays(30);
+    private volatile int companies;
+
+    SyntheticEtoroServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/investing/dividend-calendar/", this::serveCalendar);
+        server.createContext(MARKETS, this::serveMarketPage);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void setCompanies(int companies) {
+        this.companies = companies;
+    }
+
+    static String fullName(int i) {
+        return "Synthetic Company " + i + " plc";
+    }
+
+    static String symbol(int i) {
+        return "SYN" + i + EXCHANGES[i % EXCHANGES.length];
+    }
+
+    private void serveCalendar(HttpExchange exchange) throws IOException {
+        try (Writer out = begin(exchange)) {
+            out.write("<html><body><table class=\"ec-table\"><tbody class=\"ec-reports-container\">\n");
+            int count = companies;
+            for (int i = 0; i < count; i++) {
+                LocalDate exDividend = firstExDividendDate.plusDays(i % 365);
+                // A tenth of the companies pay twice within the calendar window
+                int rows = i % 10 == 0 ? 2 : 1;
+                for (int row = 0; row < rows; row++) {
+                    LocalDate rowExDividend = exDividend.plusDays(91L * row);
+                    out.write("<tr><td data-company-name=\"");
+                    out.write(fullName(i));
+                    out.write("\"><a href=\"");
+                    out.write(MARKETS);
+                    out.write(symbol(i).toLowerCase());
+                    out.write("\"><span class=\"ec-company__name\">");
+                    out.write(symbol(i));
+                    out.write("</span></a></td><td data-sector-name=\"");
+                    out.write(SECTORS[i % SECTORS.length]);
+                    out.write("\">");
+                    out.write(SECTORS[i % SECTORS.length]);
+                    out.write("</td><td data-exdividend-date=\"");
+                    out.write(rowExDividend.toString());
+                    out.write("\"></td><td data-payment-date=\"");
+                    out.write(rowExDividend.plusDays(14).toString());
+                    out.write("\"></td><td></td><td data-net-dividend=\"");
+                    out.write(Money.format(dividendMicros(i)));
+                    out.write("\"></td></tr>\n");
+                }
+            }
+            out.write("</tbody></table></body></html>\n");
+        }
+    }
+
+    private void serveMarketPage(HttpExchange exchange) throws IOException {
+        String symbol = exchange.getRequestURI().getPath().substring(MARKETS.length());
+        int end = 3;
+        while (end < symbol.length() && Character.isDigit(symbol.charAt(end)))
+            end++;
+        int i;
+        try {
+            i = Integer.parseInt(symbol, 3, end, 10);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        try (Writer out = begin(exchange)) {
+            out.write("<html><body><div class=\"head\"><span data-automation-id=\"AssetShortInfoPrice\">");
+            out.write(Money.format(priceMicros(i)));
+            out.write("</span></div><div class=\"stats\"><a id=\"stats\"></a>");
+            out.write("<div class=\"Table_row___1rR3\"><div class=\"ets-plain-text\">Volume</div><div class=\"ets-number\">1.5M</div></div>");
+            out.write("<div class=\"Table_row___1rR3\"><div class=\"ets-plain-text\">Market Cap</div><div class=\"ets-number\">");
+            out.write(Long.toString(marketCapMillions(i)));
+            out.write("M</div></div></div></body></html>\n");
+        }
+    }
+
+    private static Writer begin(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        // Chunked, so the calendar is streamed instead of built in memory
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        return new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    static long dividendMicros(int i) {
+        return 10_000 + (i * 7_919L) % 2_500_000;
+    }
+
+    static long priceMicros(int i) {
+        return Money.ONE + (i * 104_729L) % 400_000_000;
+    }
+
+    static long marketCapMillions(int i) {
+        return 50 + (i * 15_485_863L) % 2_000_000;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,81 @@
+package etoro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserStateStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheJournalOverTheSnapshot() throws Exception {
+        Path snapshot = directory.resolve("userstate.json");
+        Files.writeString(snapshot, """
+                {"favourites": ["Acme Corp"], "tags": {"Beta Holdings": ["income"]}, "notes": {"Acme Corp": "watch"}}
+                """);
+        Files.writeString(directory.resolve("userstate.json.journal"), """
+                {"op":"favourite","company":"Acme Corp","value":false}
+                {"op":"favourite","company":"Gamma Ltd","value":true}
+                {"op":"tag","company":"Beta Holdings","tag":"income","value":false}
+                {"op":"tag","company":"Beta Holdings","tag":"growth","value":true}
+                {"op":"note","company":"Acme Corp","note":null}
+                {"op":"note","company":"Gamma Ltd","note":"new"}
+                """);
+
+        UserStateStore store = UserStateStore.load(snapshot, directory.resolve("favourites.txt"));
+        store.close();
+
+        assertFalse(store.isFavourite("Acme Corp"));
+        assertTrue(store.isFavourite("Gamma Ltd"));
+        assertEquals(Set.of("growth"), store.getTags("Beta Holdings"));
+        assertNull(store.getNote("Acme Corp"));
+        assertEquals("new", store.getNote("Gamma Ltd"));
+        assertEquals(Set.of("growth"), store.getAllTags("Beta Holdings"));
+        assertEquals(Set.of(UserStateStore.FAVOURITE), store.getAllTags("Gamma Ltd"));
+    }
+
+    @Test
+    void compactsEditsIntoTheSnapshot() throws Exception {
+        Path snapshot = directory.resolve("userstate.json");
+        Path journal = directory.resolve("userstate.json.journal");
+        Path legacy = directory.resolve("favourites.txt");
+        Files.writeString(legacy, "[\"Acme Corp\"]");
+
+        UserStateStore store = UserStateStore.load(snapshot, legacy);
+        store.setTag("Acme Corp", "income", true);
+        store.setNote("Beta Holdings", "check payout");
+        store.close();
+        assertTrue(Files.exists(snapshot));
+        assertFalse(Files.exists(journal), "compaction folds the journal into the snapshot");
+
+        // The legacy list is only read while there is no snapshot
+        Files.writeString(legacy, "[\"Gamma Ltd\"]");
+        UserStateStore reloaded = UserStateStore.load(snapshot, legacy);
+        reloaded.close();
+        assertTrue(reloaded.isFavourite("Acme Corp"));
+        assertFalse(reloaded.isFavourite("Gamma Ltd"));
+        assertEquals(Set.of("income"), reloaded.getTags("Acme Corp"));
+        assertEquals("check payout", reloaded.getNote("Beta Holdings"));
+    }
+
+    @Test
+    void skipsATornLastJournalLine() throws Exception {
+        Path snapshot = directory.resolve("userstate.json");
+        Files.writeString(directory.resolve("userstate.json.journal"),
+                "{\"op\":\"favourite\",\"company\":\"Acme Corp\",\"value\":true}\n{\"op\":\"tag\",\"company\":\"Acme");
+
+        UserStateStore store = UserStateStore.load(snapshot, directory.resolve("favourites.txt"));
+        store.close();
+
+        assertTrue(store.isFavourite("Acme Corp"));
+        assertEquals(Set.of(), store.getTags("Acme Corp"));
+        assertFalse(Files.exists(directory.resolve("userstate.json.journal")));
+    }
+}
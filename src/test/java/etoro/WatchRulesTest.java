@@ -0,0 +1,130 @@
+package etoro;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchRulesTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<String> fired = new ArrayList<>();
+    private final AlertSink sink = (ruleName, company, message) -> fired.add(ruleName + " " + company.fullName);
+
+    @Test
+    void firedRulesSurviveARestart() throws Exception {
+        Path rulesFile = directory.resolve("rules.txt");
+        Files.writeString(rulesFile, "cheap: price < 10\n");
+
+        WatchRules first = WatchRules.load(rulesFile, sink);
+        first.evaluate(Fixtures.company("Acme Corp", 5 * Money.ONE));
+        first.refreshFinished();
+        assertEquals(List.of("cheap Acme Corp"), fired);
+        assertTrue(Files.exists(directory.resolve("rules.txt.state")));
+
+        WatchRules restarted = WatchRules.load(rulesFile, sink);
+        restarted.evaluate(Fixtures.company("Acme Corp", 6 * Money.ONE));
+        assertEquals(List.of("cheap Acme Corp"), fired, "still true after the restart, so not fired again");
+
+        // False in between re-arms the rule, and that is kept too
+        restarted.evaluate(Fixtures.company("Acme Corp", 20 * Money.ONE));
+        restarted.refreshFinished();
+        WatchRules rearmed = WatchRules.load(rulesFile, sink);
+        rearmed.evaluate(Fixtures.company("Acme Corp", 5 * Money.ONE));
+        assertEquals(List.of("cheap Acme Corp", "cheap Acme Corp"), fired);
+    }
+
+    @Test
+    void dateConditionsFireAsDaysPassWithoutAnUpdate() {
+        LocalDate today = LocalDate.of(2031, 1, 1);
+        Company acme = new Company.Builder("ACME", "Acme Corp")
+                .exDividendDate(today.plusDays(10))
+                .dividendDate(today.plusDays(20))
+                .priceMicros(10 * Money.ONE)
+                .dividendPerShareMicros(Money.ONE)
+                .build();
+        WatchRules watchRules = new WatchRules(sink);
+        watchRules.addRule("soon", "yield > 6 and exDividendIn <= 5");
+        watchRules.setClock(Clock.fixed(today.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+        watchRules.refreshStarted(Map.of(acme.fullName, acme));
+        watchRules.companyUpdated(new Company(acme));
+        watchRules.refreshFinished();
+        assertEquals(List.of(), fired, "10 days out");
+
+        // Later refreshes bring no update for the unchanged row
+        for (int days = 4; days <= 6; days++) {
+            watchRules.setClock(Clock.fixed(today.plusDays(days).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+            watchRules.refreshStarted(Map.of(acme.fullName, acme));
+            watchRules.refreshFinished();
+        }
+        assertEquals(List.of("soon Acme Corp"), fired, "fired once it was 5 days out, and only once");
+    }
+
+    @Test
+    void watchesFavouritesAndCompaniesWithThePriceChangeRuleTags() {
+        WatchRules watchRules = new WatchRules(sink);
+        watchRules.addRule("cheap", "price < 10");
+        Company plain = Fixtures.company("Acme Corp", Money.ONE);
+        assertFalse(watchRules.needsDetails(plain), "no priceChange rule");
+
+        watchRules.addRule("jump", "priceChange > 10 and tag dividend-kings");
+        watchRules.setUserTags(name -> name.equals("Beta Holdings") ? Set.of(UserStateStore.FAVOURITE) : Set.of());
+        Company tagged = Fixtures.company("Gamma Ltd", Money.ONE);
+        tagged.addTag("dividend-kings");
+
+        assertFalse(watchRules.needsDetails(plain));
+        assertTrue(watchRules.needsDetails(Fixtures.company("Beta Holdings", Money.ONE)));
+        assertTrue(watchRules.needsDetails(tagged));
+    }
+
+    @Test
+    void priceChangeFiresForWatchedCompaniesOnRefresh() throws Exception {
+        Path fixture = directory.resolve("companies-source.json");
+        String fixtureJson = """
+                {
+                  "Acme Corp": {"name": "ACME", "fullName": "Acme Corp", "sector": "Industrials",
+                    "exDividendDate": "05 Jan 2031", "dividendDate": "20 Jan 2031",
+                    "price": 10, "marketHref": "/markets/acme", "dividendPerShare": 1.0, "marketCap": 2000000000},
+                  "Beta Holdings": {"name": "BETA", "fullName": "Beta Holdings", "sector": "Energy",
+                    "exDividendDate": "10 Feb 2031", "dividendDate": "25 Feb 2031",
+                    "price": 20, "marketHref": "/markets/beta", "dividendPerShare": 0.5, "marketCap": 1000000000}
+                }
+                """;
+        Files.writeString(fixture, fixtureJson);
+        System.setProperty("dividend.companiesFile", directory.resolve("companies.json").toString());
+        try {
+            List<DividendSource> sources = List.of(new FileDividendSource(fixture));
+            new EtoroScraper(sources, new SourceMerger()).loadCompanies();
+
+            // Both prices go up by 25% before the next refresh, but only the favourite is re-fetched
+            Files.writeString(fixture, fixtureJson
+                    .replace("\"price\": 20,", "\"price\": 25,")
+                    .replace("\"price\": 10,", "\"price\": 12.5,"));
+            WatchRules watchRules = new WatchRules(sink);
+            watchRules.addRule("jump", "priceChange > 20");
+            watchRules.setUserTags(name -> name.equals("Beta Holdings") ? Set.of(UserStateStore.FAVOURITE) : Set.of());
+            EtoroScraper refreshed = new EtoroScraper(sources, new SourceMerger());
+            refreshed.addRefreshListener(watchRules);
+            refreshed.loadCompanies();
+
+            assertEquals(List.of("jump Beta Holdings"), fired);
+            assertEquals(25 * Money.ONE, refreshed.companies.get("Beta Holdings").priceMicros);
+            assertEquals(10 * Money.ONE, refreshed.companies.get("Acme Corp").priceMicros);
+        } finally {
+            System.clearProperty("dividend.companiesFile");
+        }
+    }
+}